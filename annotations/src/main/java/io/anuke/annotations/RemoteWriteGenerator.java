@@ -28,9 +28,14 @@ public class RemoteWriteGenerator{
             TypeSpec.Builder classBuilder = TypeSpec.classBuilder(entry.name).addModifiers(Modifier.PUBLIC);
             classBuilder.addJavadoc(RemoteMethodAnnotationProcessor.autogenWarning);
 
-            //add temporary write buffer
-            classBuilder.addField(FieldSpec.builder(ByteBuffer.class, "TEMP_BUFFER", Modifier.STATIC, Modifier.PRIVATE, Modifier.FINAL)
-            .initializer("ByteBuffer.allocate($1L)", RemoteMethodAnnotationProcessor.maxPacketSize).build());
+            //add temporary write buffers, one per thread, so methods can be called from any thread without locking
+            //ThreadLocal.withInitial isn't available on older android versions
+            TypeName bufferType = ParameterizedTypeName.get(ThreadLocal.class, ByteBuffer.class);
+            TypeSpec buffers = TypeSpec.anonymousClassBuilder("").superclass(bufferType)
+            .addMethod(MethodSpec.methodBuilder("initialValue").addAnnotation(Override.class).addModifiers(Modifier.PROTECTED).returns(ByteBuffer.class)
+            .addStatement("return $T.allocate($L)", ByteBuffer.class, RemoteMethodAnnotationProcessor.maxPacketSize).build()).build();
+            classBuilder.addField(FieldSpec.builder(bufferType, "TEMP_BUFFERS", Modifier.STATIC, Modifier.PRIVATE, Modifier.FINAL)
+            .initializer("$L", buffers).build());
 
             //go through each method entry in this class
             for(MethodEntry methodEntry : entry.methods){
@@ -62,7 +67,7 @@ public class RemoteWriteGenerator{
 
         //create builder
         MethodSpec.Builder method = MethodSpec.methodBuilder(elem.getSimpleName().toString() + (forwarded ? "__forward" : "")) //add except suffix when forwarding
-        .addModifiers(Modifier.STATIC, Modifier.SYNCHRONIZED)
+        .addModifiers(Modifier.STATIC)
         .returns(void.class);
 
         //forwarded methods aren't intended for use, and are not public
@@ -126,8 +131,10 @@ public class RemoteWriteGenerator{
         //start control flow to check if it's actually client/server so no netcode is called
         method.beginControlFlow("if(" + getCheckString(methodEntry.where) + ")");
 
-        //add statement to create packet from pool
-        method.addStatement("$1N packet = $2N.obtain($1N.class, $1N::new)", "io.anuke.mindustry.net.Packets.InvokePacket", "io.anuke.arc.util.pooling.Pools");
+        //add statement to create packet from the thread-safe pool
+        method.addStatement("$1N packet = $2N.obtain($1N.class)", "io.anuke.mindustry.net.Packets.InvokePacket", "io.anuke.mindustry.net.PacketPool");
+        //get the buffer of this thread
+        method.addStatement("$T TEMP_BUFFER = TEMP_BUFFERS.get()", ByteBuffer.class);
         //assign buffer
         method.addStatement("packet.writeBuffer = TEMP_BUFFER");
         //assign priority
@@ -208,6 +215,9 @@ public class RemoteWriteGenerator{
         method.addStatement(sendString + "packet, " +
         (methodEntry.unreliable ? "io.anuke.mindustry.net.Net.SendMode.udp" : "io.anuke.mindustry.net.Net.SendMode.tcp") + ")");
 
+        //the packet has been serialized by now, so it can be reused
+        method.addStatement("$N.free(packet)", "io.anuke.mindustry.net.PacketPool");
+
 
         //end check for server/client
         method.endControlFlow();
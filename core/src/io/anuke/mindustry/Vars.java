@@ -147,6 +147,7 @@ public class Vars implements Loadable{
     public static WaveSpawner spawner;
     public static BlockIndexer indexer;
     public static Pathfinder pathfinder;
+    public static SurfaceGrid surface;
 
     public static Control control;
     public static Logic logic;
@@ -162,8 +163,6 @@ public class Vars implements Loadable{
     public static EntityGroup<EffectEntity> effectGroup;
     public static EntityGroup<DrawTrait> groundEffectGroup;
     public static EntityGroup<ShieldEntity> shieldGroup;
-    public static EntityGroup<Puddle> puddleGroup;
-    public static EntityGroup<Fire> fireGroup;
     public static EntityGroup<BaseUnit>[] unitGroups;
 
     public static Player player;
@@ -205,20 +204,19 @@ public class Vars implements Loadable{
         spawner = new WaveSpawner();
         indexer = new BlockIndexer();
         pathfinder = new Pathfinder();
+        surface = new SurfaceGrid();
 
         entities = new Entities();
         playerGroup = entities.add(Player.class).enableMapping();
         tileGroup = entities.add(TileEntity.class, false);
-        bulletGroup = entities.add(Bullet.class).enableMapping();
+        bulletGroup = entities.add(Bullet.class).enableMapping().setBroadphase(new SpatialHash(tilesize * 4));
         effectGroup = entities.add(EffectEntity.class, false);
         groundEffectGroup = entities.add(DrawTrait.class, false);
-        puddleGroup = entities.add(Puddle.class).enableMapping();
         shieldGroup = entities.add(ShieldEntity.class, false);
-        fireGroup = entities.add(Fire.class).enableMapping();
         unitGroups = new EntityGroup[Team.all.length];
 
         for(Team team : Team.all){
-            unitGroups[team.ordinal()] = entities.add(BaseUnit.class).enableMapping();
+            unitGroups[team.ordinal()] = entities.add(BaseUnit.class).enableMapping().setBroadphase(new SpatialHash(tilesize * 4));
         }
 
         for(EntityGroup<?> group : entities.all()){
@@ -21,7 +21,7 @@ import static io.anuke.mindustry.Vars.*;
 @SuppressWarnings("unchecked")
 public class BlockIndexer{
     /** Size of one quadrant. */
-    private final static int quadrantSize = 16;
+    public final static int quadrantSize = 16;
 
     /** Set of all ores that are being scanned. */
     private final ObjectSet<Item> scanOres = new ObjectSet<>();
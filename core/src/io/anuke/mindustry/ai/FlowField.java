@@ -0,0 +1,189 @@
+package io.anuke.mindustry.ai;
+
+import io.anuke.arc.collection.*;
+import io.anuke.arc.math.geom.*;
+
+import java.util.*;
+
+/**
+ * A flow field over a grid of cells, stored in flat primitive arrays indexed by {@code x + y * width}.
+ * Each cell holds the accumulated cost to reach the nearest source cell.
+ * When single cells change cost, passability or source status, only the affected part of the field is repaired:
+ * cells that got cheaper are propagated outwards, and cells that got more expensive invalidate every
+ * cell whose weight was derived from them, which is then re-flooded from the valid border.
+ */
+public class FlowField{
+    /** Weight of cells that cannot reach any source. */
+    public static final int impassable = Integer.MAX_VALUE;
+    /** Cost of cells that cannot be entered. */
+    public static final int solid = -1;
+
+    private static final byte noParent = -1, sourceParent = 4;
+
+    public final int width, height;
+    /** Cost to enter each cell, or {@link #solid}. */
+    private final int[] costs;
+    /** Accumulated cost from each cell to the nearest source. */
+    private final int[] weights;
+    /** Index into {@link Geometry#d4} pointing to the cell each weight was derived from. */
+    private final byte[] parents;
+    /** Cells whose weight has changed and has not been propagated to neighbours yet. */
+    private final IntQueue frontier = new IntQueue();
+    /** Scratch queue used for invalidating cells. */
+    private final IntQueue raised = new IntQueue();
+    /** Scratch array of cells invalidated in the last raise. */
+    private final IntArray invalidated = new IntArray();
+
+    public FlowField(int width, int height){
+        this.width = width;
+        this.height = height;
+        this.costs = new int[width * height];
+        this.weights = new int[width * height];
+        this.parents = new byte[width * height];
+
+        Arrays.fill(weights, impassable);
+        Arrays.fill(parents, noParent);
+        frontier.ensureCapacity((width + height) * 3);
+    }
+
+    /**
+     * Sets the initial state of a cell without repairing the field.
+     * Used for building the field from scratch; call {@link #update()} afterwards to flood it.
+     */
+    public void init(int x, int y, int cost, boolean source){
+        int index = index(x, y);
+        costs[index] = cost;
+        if(source){
+            weights[index] = 0;
+            parents[index] = sourceParent;
+            frontier.addFirst(index);
+        }else{
+            weights[index] = impassable;
+            parents[index] = noParent;
+        }
+    }
+
+    /** Changes the state of a cell and schedules a repair of every cell affected by it. */
+    public void set(int x, int y, int cost, boolean source){
+        int index = index(x, y);
+        int lastCost = costs[index];
+        boolean wasSource = parents[index] == sourceParent;
+
+        if(lastCost == cost && wasSource == source) return;
+
+        costs[index] = cost;
+
+        if(source){
+            weights[index] = 0;
+            parents[index] = sourceParent;
+            frontier.addFirst(index);
+            return;
+        }
+
+        if(wasSource || cost == solid || (lastCost != solid && cost > lastCost)){
+            //this cell got more expensive, so everything derived from it may now be too cheap
+            raise(index);
+        }else{
+            //this cell got cheaper; it may now be reachable through any of its neighbours
+            seed(index);
+        }
+    }
+
+    /** Propagates all pending weight changes, until the field has converged. */
+    public void update(){
+        while(frontier.size > 0){
+            int index = frontier.removeLast();
+            int weight = weights[index];
+
+            //cell was invalidated after being queued
+            if(weight == impassable) continue;
+
+            int x = index % width, y = index / width;
+
+            for(int i = 0; i < 4; i++){
+                Point2 point = Geometry.d4[i];
+                int dx = x + point.x, dy = y + point.y;
+                if(dx < 0 || dy < 0 || dx >= width || dy >= height) continue;
+
+                int other = index(dx, dy);
+                int cost = costs[other];
+
+                if(cost != solid && parents[other] != sourceParent && weights[other] > weight + cost){
+                    weights[other] = weight + cost;
+                    parents[other] = (byte)((i + 2) % 4);
+                    frontier.addFirst(other);
+                }
+            }
+        }
+    }
+
+    /** @return whether there are no pending changes left to propagate. */
+    public boolean converged(){
+        return frontier.isEmpty();
+    }
+
+    /** Copies the weight of every cell into the specified array, which must hold at least {@code width * height} values. */
+    public void copyWeights(int[] dest){
+        System.arraycopy(weights, 0, dest, 0, weights.length);
+    }
+
+    /** @return weight of the cell at this position, or {@link #impassable} if it is out of bounds or unreachable. */
+    public int weight(int x, int y){
+        return x < 0 || y < 0 || x >= width || y >= height ? impassable : weights[index(x, y)];
+    }
+
+    /** Invalidates the cell at this index and every cell whose weight was derived from it, then re-floods them from their border. */
+    private void raise(int start){
+        invalidated.clear();
+        raised.clear();
+
+        weights[start] = impassable;
+        parents[start] = noParent;
+        invalidated.add(start);
+        raised.addFirst(start);
+
+        while(raised.size > 0){
+            int index = raised.removeLast();
+            int x = index % width, y = index / width;
+
+            for(int i = 0; i < 4; i++){
+                Point2 point = Geometry.d4[i];
+                int dx = x + point.x, dy = y + point.y;
+                if(dx < 0 || dy < 0 || dx >= width || dy >= height) continue;
+
+                int other = index(dx, dy);
+
+                //only cells pointing back at this one depend on its weight
+                if(parents[other] == (i + 2) % 4){
+                    weights[other] = impassable;
+                    parents[other] = noParent;
+                    invalidated.add(other);
+                    raised.addFirst(other);
+                }
+            }
+        }
+
+        for(int i = 0; i < invalidated.size; i++){
+            seed(invalidated.get(i));
+        }
+    }
+
+    /** Queues all valid neighbours of a cell, so that their weight is propagated into it. */
+    private void seed(int index){
+        int x = index % width, y = index / width;
+
+        for(Point2 point : Geometry.d4){
+            int dx = x + point.x, dy = y + point.y;
+            if(dx < 0 || dy < 0 || dx >= width || dy >= height) continue;
+
+            int other = index(dx, dy);
+            if(weights[other] != impassable){
+                frontier.addFirst(other);
+            }
+        }
+    }
+
+    private int index(int x, int y){
+        return x + y * width;
+    }
+}
@@ -2,209 +2,228 @@ package io.anuke.mindustry.ai;
 
 import io.anuke.arc.Events;
 import io.anuke.arc.collection.IntArray;
-import io.anuke.arc.collection.IntQueue;
 import io.anuke.arc.math.geom.Geometry;
 import io.anuke.arc.math.geom.Point2;
-import io.anuke.arc.util.*;
+import io.anuke.arc.util.async.*;
 import io.anuke.mindustry.game.EventType.TileChangeEvent;
 import io.anuke.mindustry.game.EventType.WorldLoadEvent;
 import io.anuke.mindustry.game.Team;
-import io.anuke.mindustry.game.Teams.TeamData;
-import io.anuke.mindustry.net.Net;
-import io.anuke.mindustry.world.Pos;
 import io.anuke.mindustry.world.Tile;
 import io.anuke.mindustry.world.meta.BlockFlag;
 
 import static io.anuke.mindustry.Vars.*;
 
+/**
+ * Computes flow fields towards enemy targets for every active team.
+ * Tile changes are recorded on the logic thread as a snapshot of each tile's cost, and the fields are repaired
+ * on a pool of worker threads. Finished weights are only swapped in at the start of {@link #update()},
+ * so {@link #getTargetTile(Team, Tile)} never observes a partially updated field.
+ */
 public class Pathfinder{
-    private static final long maxUpdate = Time.millisToNanos(4);
+    private final AsyncExecutor executor = new AsyncExecutor(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1));
+    private final SectorGraph sectors = new SectorGraph();
     private PathData[] paths;
-    private IntArray blocked = new IntArray();
 
     public Pathfinder(){
         Events.on(WorldLoadEvent.class, event -> clear());
         Events.on(TileChangeEvent.class, event -> {
             if(net.client()) return;
 
-            for(Team team : Team.all){
-                TeamData data = state.teams.get(team);
-                if(state.teams.isActive(team) && data.team != event.tile.getTeam()){
-                    update(event.tile, data.team);
-                }
-            }
-
-            update(event.tile, event.tile.getTeam());
+            sectors.invalidate(event.tile);
+            updateTile(event.tile);
         });
     }
 
     public void updateSolid(Tile tile){
-        update(tile, tile.getTeam());
+        updateTile(tile);
     }
 
     public void update(){
         if(net.client() || paths == null) return;
 
         for(Team team : Team.all){
-            if(state.teams.isActive(team)){
-                updateFrontier(team, maxUpdate);
+            PathData data = paths[team.ordinal()];
+
+            if(state.teams.isActive(team) && data != null){
+                data.update();
             }
         }
     }
 
     public Tile getTargetTile(Team team, Tile tile){
-        float[][] values = paths[team.ordinal()].weights;
+        PathData path = paths == null ? null : paths[team.ordinal()];
 
-        if(values == null || tile == null) return tile;
+        if(path == null || tile == null) return tile;
 
-        float value = values[tile.x][tile.y];
+        int value = path.weight(tile.x, tile.y);
 
         Tile target = null;
-        float tl = 0f;
+        int tl = 0;
         for(Point2 point : Geometry.d8){
             int dx = tile.x + point.x, dy = tile.y + point.y;
 
             Tile other = world.tile(dx, dy);
             if(other == null) continue;
 
-            if(values[dx][dy] < value && (target == null || values[dx][dy] < tl) &&
+            int weight = path.weight(dx, dy);
+
+            if(weight < value && (target == null || weight < tl) &&
             !other.solid() && other.floor().drownTime <= 0 &&
             !(point.x != 0 && point.y != 0 && (world.solid(tile.x + point.x, tile.y) || world.solid(tile.x, tile.y + point.y)))){ //diagonal corner trap
                 target = other;
-                tl = values[dx][dy];
+                tl = weight;
             }
         }
 
-        if(target == null || tl == Float.MAX_VALUE) return tile;
+        if(target == null || tl == FlowField.impassable) return tile;
 
         return target;
     }
 
+    /**
+     * Finds a path between two arbitrary tiles using the hierarchical sector graph.
+     * @param out receives the positions of the path's waypoints; see {@link SectorGraph#findPath(int, int, int, int, IntArray)}.
+     * @return whether a path was found.
+     */
+    public boolean findPath(Tile from, Tile to, IntArray out){
+        return sectors.findPath(from.x, from.y, to.x, to.y, out);
+    }
+
+    /** Expands the step between two consecutive waypoints of {@link #findPath(Tile, Tile, IntArray)} into individual tile positions. */
+    public boolean refinePath(int from, int to, IntArray out){
+        return sectors.refine(from, to, out);
+    }
+
     public float getValueforTeam(Team team, int x, int y){
-        return paths == null || paths[team.ordinal()].weights == null || team.ordinal() >= paths.length ? 0 : Structs.inBounds(x, y, paths[team.ordinal()].weights) ? paths[team.ordinal()].weights[x][y] : 0;
+        if(paths == null || team.ordinal() >= paths.length || paths[team.ordinal()] == null) return 0;
+        int weight = paths[team.ordinal()].weight(x, y);
+        return weight == FlowField.impassable ? 0 : weight;
+    }
+
+    /** @return how many ticks the flow field of this team took to be published after the last tile change. */
+    public int getRepairTicks(Team team){
+        return paths == null || paths[team.ordinal()] == null ? 0 : paths[team.ordinal()].lastRepairTicks;
     }
 
     private boolean passable(Tile tile, Team team){
         return ((!tile.solid()) || (tile.breakable() && (tile.getTeam() != team))) && tile.floor().drownTime <= 0f;
     }
 
-    /**
-     * Clears the frontier, increments the search and sets up all flow sources.
-     * This only occurs for active teams.
-     */
-    private void update(Tile tile, Team team){
-        //make sure team exists
-        if(paths != null && paths[team.ordinal()] != null && paths[team.ordinal()].weights != null && Structs.inBounds(tile.x, tile.y, paths[team.ordinal()].weights)){
-            PathData path = paths[team.ordinal()];
+    private int cost(Tile tile, Team team){
+        if(tile.cost < 0) throw new IllegalArgumentException("Tile cost cannot be negative! " + tile);
+        return passable(tile, team) ? tile.cost : FlowField.solid;
+    }
 
-            if(path.weights[tile.x][tile.y] <= 0.1f){
-                //this was a previous target
-                path.frontier.clear();
-            }else if(!path.frontier.isEmpty()){
-                return;
-            }
+    private boolean target(Tile tile, Team team){
+        return state.teams.areEnemies(tile.getTeam(), team) && tile.block().flags.contains(BlockFlag.target);
+    }
 
-            //impassable tiles have a weight of float.max
-            if(!passable(tile, team)){
-                path.weights[tile.x][tile.y] = Float.MAX_VALUE;
-            }
+    /** Records the current state of this tile for every flow field. The fields are repaired on the next update. */
+    private void updateTile(Tile tile){
+        if(paths == null) return;
 
-            //increment search, clear frontier
-            path.search++;
-            path.frontier.clear();
-            path.lastSearchTime = Time.millis();
+        for(Team team : Team.all){
+            PathData path = paths[team.ordinal()];
 
-            //add all targets to the frontier
-            for(Tile other : indexer.getEnemy(team, BlockFlag.target)){
-                path.weights[other.x][other.y] = 0;
-                path.searches[other.x][other.y] = (short)path.search;
-                path.frontier.addFirst(other.pos());
+            if(path != null && tile.x < path.field.width && tile.y < path.field.height){
+                path.edits.add(tile.x, tile.y, cost(tile, team), target(tile, team) ? 1 : 0);
             }
         }
     }
 
     private void createFor(Team team){
-        PathData path = new PathData();
-        path.weights = new float[world.width()][world.height()];
-        path.searches = new short[world.width()][world.height()];
-        path.search++;
-        path.frontier.ensureCapacity((world.width() + world.height()) * 3);
-
-        paths[team.ordinal()] = path;
+        FlowField field = new FlowField(world.width(), world.height());
 
         for(int x = 0; x < world.width(); x++){
             for(int y = 0; y < world.height(); y++){
                 Tile tile = world.tile(x, y);
-
-                if(state.teams.areEnemies(tile.getTeam(), team)
-                && tile.block().flags.contains(BlockFlag.target)){
-                    path.frontier.addFirst(tile.pos());
-                    path.weights[x][y] = 0;
-                    path.searches[x][y] = (short)path.search;
-                }else{
-                    path.weights[x][y] = Float.MAX_VALUE;
-                }
+                field.init(x, y, cost(tile, team), target(tile, team));
             }
         }
 
-        updateFrontier(team, -1);
+        field.update();
+
+        paths[team.ordinal()] = new PathData(field);
     }
 
-    private void updateFrontier(Team team, long nsToRun){
-        PathData path = paths[team.ordinal()];
+    private void clear(){
+        //fields of the last world may still be processing; their results are simply discarded
+        paths = new PathData[Team.all.length];
+        sectors.reset();
 
-        long start = Time.nanos();
+        for(Team team : Team.all){
+            if(state.teams.isActive(team)){
+                createFor(team);
+            }
+        }
+    }
+
+    class PathData{
+        /** Flow field owned by the worker thread while a task is running. */
+        final FlowField field;
+        /** Published weights, read by the logic thread. */
+        int[] weights;
+        /** Weights written by the worker thread, swapped in once its task is done. */
+        int[] buffer;
+        /** Tile edits recorded since the last task was submitted, as (x, y, cost, target) tuples. */
+        IntArray edits = new IntArray();
+        /** Tile edits being applied by the current task. */
+        IntArray pending = new IntArray();
+        AsyncResult<Void> task;
+        /** Ticks spent on the edits that are not published yet, and ticks the last published edits took. */
+        int repairTicks, lastRepairTicks;
+
+        PathData(FlowField field){
+            this.field = field;
+            this.weights = new int[field.width * field.height];
+            this.buffer = new int[field.width * field.height];
+            field.copyWeights(weights);
+        }
 
-        while(path.frontier.size > 0 && (nsToRun < 0 || Time.timeSinceNanos(start) <= nsToRun)){
-            Tile tile = world.tile(path.frontier.removeLast());
-            if(tile == null || path.weights == null) return; //something went horribly wrong, bail
-            float cost = path.weights[tile.x][tile.y];
+        int weight(int x, int y){
+            return x < 0 || y < 0 || x >= field.width || y >= field.height ? FlowField.impassable : weights[x + y * field.width];
+        }
 
-            //pathfinding overflowed for some reason, time to bail. the next block update will handle this, hopefully
-            if(path.frontier.size >= world.width() * world.height()){
-                path.frontier.clear();
-                return;
-            }
+        void update(){
+            if(task != null){
+                if(!task.isDone()){
+                    repairTicks ++;
+                    return;
+                }
 
-            if(cost < Float.MAX_VALUE){
-                for(Point2 point : Geometry.d4){
+                //rethrows any exception from the worker
+                task.get();
+                task = null;
 
-                    int dx = tile.x + point.x, dy = tile.y + point.y;
-                    Tile other = world.tile(dx, dy);
+                int[] last = weights;
+                weights = buffer;
+                buffer = last;
 
-                    if(other != null && (path.weights[dx][dy] > cost + other.cost || path.searches[dx][dy] < path.search)
-                    && passable(other, team)){
-                        if(other.cost < 0) throw new IllegalArgumentException("Tile cost cannot be negative! " + other);
-                        path.frontier.addFirst(Pos.get(dx, dy));
-                        path.weights[dx][dy] = cost + other.cost;
-                        path.searches[dx][dy] = (short)path.search;
-                    }
+                if(edits.size == 0){
+                    lastRepairTicks = repairTicks;
+                    repairTicks = 0;
                 }
             }
-        }
-    }
 
-    private void clear(){
-        Time.mark();
+            if(edits.size == 0) return;
 
-        paths = new PathData[Team.all.length];
-        blocked.clear();
+            IntArray next = pending;
+            pending = edits;
+            edits = next;
+            edits.clear();
+            repairTicks ++;
 
-        for(Team team : Team.all){
-            PathData path = new PathData();
-            paths[team.ordinal()] = path;
+            IntArray apply = pending;
+            int[] dest = buffer;
 
-            if(state.teams.isActive(team)){
-                createFor(team);
-            }
+            task = executor.submit(() -> {
+                for(int i = 0; i < apply.size; i += 4){
+                    field.set(apply.get(i), apply.get(i + 1), apply.get(i + 2), apply.get(i + 3) == 1);
+                }
+                field.update();
+                field.copyWeights(dest);
+                return null;
+            });
         }
     }
-
-    class PathData{
-        float[][] weights;
-        short[][] searches;
-        int search = 0;
-        long lastSearchTime;
-        IntQueue frontier = new IntQueue();
-    }
 }
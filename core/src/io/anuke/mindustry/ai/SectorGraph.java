@@ -0,0 +1,424 @@
+package io.anuke.mindustry.ai;
+
+import io.anuke.arc.collection.*;
+import io.anuke.arc.math.geom.*;
+import io.anuke.mindustry.world.*;
+
+import java.util.*;
+
+import static io.anuke.mindustry.Vars.world;
+
+/**
+ * Hierarchical pathfinding graph for ground units.
+ * The map is divided into sectors of {@link BlockIndexer#quadrantSize} tiles. Portals are placed on every passable
+ * opening between two sectors, and the costs between the portals of a sector are cached until one of its tiles changes.
+ * Queries search the coarse portal graph, and paths are only refined into individual tiles one sector at a time.
+ */
+public class SectorGraph{
+    private static final int size = BlockIndexer.quadrantSize;
+    /** Openings longer than this get a portal at each end instead of one in the middle. */
+    private static final int maxPortalGap = 8;
+    /** Node ID of the start and goal of a search. */
+    private static final int startNode = -1, goalNode = -2;
+
+    private Sector[] sectors = {};
+    private int sectorsX, sectorsY;
+
+    /** Scratch arrays for searches inside a single sector. */
+    private final int[] localWeights = new int[size * size], localParents = new int[size * size];
+    private final NodeHeap localHeap = new NodeHeap();
+    /** Scratch state for searches over the portal graph. */
+    private final NodeHeap heap = new NodeHeap();
+    private final IntIntMap costs = new IntIntMap(), parents = new IntIntMap();
+    private final IntSet closed = new IntSet();
+    private final IntArray startCosts = new IntArray(), goalCosts = new IntArray(), portalBuffer = new IntArray();
+
+    /** Discards all sectors. Called when a new world is loaded. */
+    public void reset(){
+        sectorsX = (world.width() + size - 1) / size;
+        sectorsY = (world.height() + size - 1) / size;
+        sectors = new Sector[sectorsX * sectorsY];
+        for(int i = 0; i < sectors.length; i++){
+            sectors[i] = new Sector(i % sectorsX, i / sectorsX);
+        }
+    }
+
+    /** Marks the sector of this tile as dirty, as well as the neighbouring sector if the tile lies on its border. */
+    public void invalidate(Tile tile){
+        if(sectors.length == 0) return;
+
+        int sx = tile.x / size, sy = tile.y / size;
+        markDirty(sx, sy);
+
+        if(tile.x % size == 0) markDirty(sx - 1, sy);
+        if(tile.x % size == size - 1) markDirty(sx + 1, sy);
+        if(tile.y % size == 0) markDirty(sx, sy - 1);
+        if(tile.y % size == size - 1) markDirty(sx, sy + 1);
+    }
+
+    /**
+     * Finds a path between two tiles over the portal graph.
+     * @param out receives the {@link Pos} of the start, every portal along the path and the goal, in order.
+     * Consecutive points are always either in the same sector or directly adjacent; use {@link #refine(int, int, IntArray)} to expand them.
+     * @return whether a path was found.
+     */
+    public boolean findPath(int startX, int startY, int goalX, int goalY, IntArray out){
+        out.clear();
+
+        if(!validate() || !passable(startX, startY) || !passable(goalX, goalY)) return false;
+
+        Sector start = sector(startX / size, startY / size), goal = sector(goalX / size, goalY / size);
+
+        //search the start sector first, the goal may be reachable without leaving it
+        flood(start, startX, startY);
+        if(start == goal && localWeights[local(start, goalX, goalY)] != FlowField.impassable){
+            out.add(Pos.get(startX, startY), Pos.get(goalX, goalY));
+            return true;
+        }
+
+        startCosts.clear();
+        for(int i = 0; i < start.portalCount; i++){
+            startCosts.add(localWeights[local(start, start.portals[i] % world.width(), start.portals[i] / world.width())]);
+        }
+
+        //costs are stored from the goal outwards; reversing a path adds the cost of its start and removes the cost of its end
+        flood(goal, goalX, goalY);
+        goalCosts.clear();
+        for(int i = 0; i < goal.portalCount; i++){
+            int portal = goal.portals[i];
+            int weight = localWeights[local(goal, portal % world.width(), portal / world.width())];
+            goalCosts.add(weight == FlowField.impassable ? weight : weight - cost(portal) + cost(goalX, goalY));
+        }
+
+        heap.clear();
+        costs.clear();
+        parents.clear();
+        closed.clear();
+
+        for(int i = 0; i < start.portalCount; i++){
+            relax(startNode, start.portals[i], startCosts.get(i), goalX, goalY);
+        }
+
+        while(heap.size > 0){
+            int node = heap.poll();
+
+            if(node == goalNode){
+                trace(startX, startY, goalX, goalY, out);
+                return true;
+            }
+
+            if(!closed.add(node)) continue;
+
+            int x = node % world.width(), y = node / world.width();
+            int g = costs.get(node, FlowField.impassable);
+            Sector sector = sector(x / size, y / size);
+            int index = sector.indexOf(node);
+            if(index == -1) continue;
+
+            for(int i = 0; i < sector.portalCount; i++){
+                int cost = sector.costs[index * sector.portalCount + i];
+                if(i != index && cost != FlowField.impassable){
+                    relax(node, sector.portals[i], g + cost, goalX, goalY);
+                }
+            }
+
+            if(sector == goal && goalCosts.get(index) != FlowField.impassable){
+                relax(node, goalNode, g + goalCosts.get(index), goalX, goalY);
+            }
+
+            for(int d = 0; d < 4; d++){
+                if((sector.crossings[index] & (1 << d)) != 0){
+                    Point2 point = Geometry.d4[d];
+                    int other = (x + point.x) + (y + point.y) * world.width();
+                    //make sure the neighbouring sector is up to date
+                    sector((x + point.x) / size, (y + point.y) / size);
+                    relax(node, other, g + cost(other), goalX, goalY);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Expands the step between two consecutive points of a path from {@link #findPath(int, int, int, int, IntArray)}
+     * into individual tiles, not including the starting tile.
+     * @return whether the step could be refined.
+     */
+    public boolean refine(int from, int to, IntArray out){
+        out.clear();
+
+        int fx = Pos.x(from), fy = Pos.y(from), tx = Pos.x(to), ty = Pos.y(to);
+
+        if(!validate() || !passable(fx, fy) || !passable(tx, ty)) return false;
+
+        if(Math.abs(fx - tx) + Math.abs(fy - ty) <= 1){
+            out.add(to);
+            return true;
+        }
+
+        if(fx / size != tx / size || fy / size != ty / size) return false;
+
+        Sector sector = sector(fx / size, fy / size);
+        flood(sector, fx, fy);
+
+        int index = local(sector, tx, ty);
+        if(localWeights[index] == FlowField.impassable) return false;
+
+        int offsetX = sector.x * size, offsetY = sector.y * size;
+        int start = out.size;
+        while(localParents[index] != -1){
+            out.add(Pos.get(offsetX + index % size, offsetY + index / size));
+            index = localParents[index];
+        }
+        out.reverse();
+
+        return out.size > start;
+    }
+
+    private void relax(int from, int node, int cost, int goalX, int goalY){
+        if(cost < costs.get(node, FlowField.impassable)){
+            costs.put(node, cost);
+            parents.put(node, from);
+
+            int heuristic = node == goalNode ? 0 : Math.abs(node % world.width() - goalX) + Math.abs(node / world.width() - goalY);
+            heap.add(node, cost + heuristic);
+        }
+    }
+
+    private void trace(int startX, int startY, int goalX, int goalY, IntArray out){
+        out.add(Pos.get(goalX, goalY));
+
+        int node = parents.get(goalNode, startNode);
+        while(node != startNode){
+            out.add(Pos.get(node % world.width(), node / world.width()));
+            node = parents.get(node, startNode);
+        }
+
+        out.add(Pos.get(startX, startY));
+        out.reverse();
+    }
+
+    /** Resets the sectors if they don't match the size of the world, such as before the first world load event. @return whether there is a world. */
+    private boolean validate(){
+        if(sectorsX != (world.width() + size - 1) / size || sectorsY != (world.height() + size - 1) / size){
+            reset();
+        }
+        return sectors.length > 0;
+    }
+
+    private void markDirty(int sx, int sy){
+        if(sx >= 0 && sy >= 0 && sx < sectorsX && sy < sectorsY){
+            sectors[sx + sy * sectorsX].dirty = true;
+        }
+    }
+
+    /** @return the sector at these sector coordinates, rebuilding it first if it is dirty. */
+    private Sector sector(int sx, int sy){
+        Sector sector = sectors[sx + sy * sectorsX];
+        if(sector.dirty){
+            rebuild(sector);
+        }
+        return sector;
+    }
+
+    private void rebuild(Sector sector){
+        int x0 = sector.x * size, y0 = sector.y * size;
+        int x1 = Math.min(x0 + size, world.width()) - 1, y1 = Math.min(y0 + size, world.height()) - 1;
+
+        portalBuffer.clear();
+
+        scanBorder(sector, x1, y0, 0, 1, y1 - y0 + 1, 0);
+        scanBorder(sector, x0, y1, 1, 0, x1 - x0 + 1, 1);
+        scanBorder(sector, x0, y0, 0, 1, y1 - y0 + 1, 2);
+        scanBorder(sector, x0, y0, 1, 0, x1 - x0 + 1, 3);
+
+        int count = portalBuffer.size / 2;
+        sector.portalCount = count;
+        sector.portals = new int[count];
+        sector.crossings = new int[count];
+        for(int i = 0; i < count; i++){
+            sector.portals[i] = portalBuffer.get(i * 2);
+            sector.crossings[i] = portalBuffer.get(i * 2 + 1);
+        }
+
+        sector.costs = new int[count * count];
+        for(int i = 0; i < count; i++){
+            int portal = sector.portals[i];
+            flood(sector, portal % world.width(), portal / world.width());
+
+            for(int j = 0; j < count; j++){
+                int other = sector.portals[j];
+                sector.costs[i * count + j] = localWeights[local(sector, other % world.width(), other / world.width())];
+            }
+        }
+
+        sector.dirty = false;
+    }
+
+    /** Places portals along one border of a sector, wherever both it and the tiles across it are passable. */
+    private void scanBorder(Sector sector, int x, int y, int stepX, int stepY, int length, int direction){
+        Point2 point = Geometry.d4[direction];
+        int begin = -1;
+
+        for(int i = 0; i <= length; i++){
+            int cx = x + stepX * i, cy = y + stepY * i;
+            boolean open = i < length && passable(cx, cy) && passable(cx + point.x, cy + point.y);
+
+            if(open && begin == -1){
+                begin = i;
+            }else if(!open && begin != -1){
+                int end = i - 1;
+                if(end - begin + 1 > maxPortalGap){
+                    addPortal(x + stepX * begin, y + stepY * begin, direction);
+                    addPortal(x + stepX * end, y + stepY * end, direction);
+                }else{
+                    int mid = (begin + end) / 2;
+                    addPortal(x + stepX * mid, y + stepY * mid, direction);
+                }
+                begin = -1;
+            }
+        }
+    }
+
+    private void addPortal(int x, int y, int direction){
+        int pos = x + y * world.width();
+
+        //corner tiles can open into two sectors
+        for(int i = 0; i < portalBuffer.size; i += 2){
+            if(portalBuffer.get(i) == pos){
+                portalBuffer.set(i + 1, portalBuffer.get(i + 1) | (1 << direction));
+                return;
+            }
+        }
+
+        portalBuffer.add(pos, 1 << direction);
+    }
+
+    /** Runs Dijkstra from a tile over the tiles of a single sector, storing the results in the local scratch arrays. */
+    private void flood(Sector sector, int startX, int startY){
+        int x0 = sector.x * size, y0 = sector.y * size;
+        int width = Math.min(size, world.width() - x0), height = Math.min(size, world.height() - y0);
+
+        Arrays.fill(localWeights, FlowField.impassable);
+        Arrays.fill(localParents, -1);
+        localHeap.clear();
+
+        int start = local(sector, startX, startY);
+        localWeights[start] = 0;
+        localHeap.add(start, 0);
+
+        while(localHeap.size > 0){
+            int priority = localHeap.peekPriority();
+            int index = localHeap.poll();
+            if(priority > localWeights[index]) continue;
+
+            int lx = index % size, ly = index / size;
+
+            for(Point2 point : Geometry.d4){
+                int nx = lx + point.x, ny = ly + point.y;
+                if(nx < 0 || ny < 0 || nx >= width || ny >= height || !passable(x0 + nx, y0 + ny)) continue;
+
+                int other = nx + ny * size;
+                int weight = localWeights[index] + cost(x0 + nx, y0 + ny);
+                if(weight < localWeights[other]){
+                    localWeights[other] = weight;
+                    localParents[other] = index;
+                    localHeap.add(other, weight);
+                }
+            }
+        }
+    }
+
+    private int local(Sector sector, int x, int y){
+        return (x - sector.x * size) + (y - sector.y * size) * size;
+    }
+
+    private boolean passable(int x, int y){
+        Tile tile = world.tile(x, y);
+        return tile != null && !tile.solid() && tile.floor().drownTime <= 0f;
+    }
+
+    private int cost(int x, int y){
+        return world.rawTile(x, y).cost;
+    }
+
+    private int cost(int index){
+        return cost(index % world.width(), index / world.width());
+    }
+
+    static class Sector{
+        final int x, y;
+        boolean dirty = true;
+        /** Tile indices of every portal in this sector. */
+        int[] portals = {};
+        /** Bitmask of the directions each portal opens into. */
+        int[] crossings = {};
+        /** Cost between each pair of portals, in row-major order. */
+        int[] costs = {};
+        int portalCount;
+
+        Sector(int x, int y){
+            this.x = x;
+            this.y = y;
+        }
+
+        int indexOf(int portal){
+            for(int i = 0; i < portalCount; i++){
+                if(portals[i] == portal) return i;
+            }
+            return -1;
+        }
+    }
+
+    /** Binary min-heap of int nodes with int priorities. */
+    static class NodeHeap{
+        int[] nodes = new int[64], priorities = new int[64];
+        int size;
+
+        void add(int node, int priority){
+            if(size == nodes.length){
+                nodes = Arrays.copyOf(nodes, size * 2);
+                priorities = Arrays.copyOf(priorities, size * 2);
+            }
+
+            int index = size++;
+            while(index > 0){
+                int parent = (index - 1) / 2;
+                if(priorities[parent] <= priority) break;
+                nodes[index] = nodes[parent];
+                priorities[index] = priorities[parent];
+                index = parent;
+            }
+            nodes[index] = node;
+            priorities[index] = priority;
+        }
+
+        int peekPriority(){
+            return priorities[0];
+        }
+
+        int poll(){
+            int result = nodes[0];
+            int node = nodes[--size], priority = priorities[size];
+
+            int index = 0;
+            while(index * 2 + 1 < size){
+                int child = index * 2 + 1;
+                if(child + 1 < size && priorities[child + 1] < priorities[child]) child++;
+                if(priorities[child] >= priority) break;
+                nodes[index] = nodes[child];
+                priorities[index] = priorities[child];
+                index = child;
+            }
+            nodes[index] = node;
+            priorities[index] = priority;
+
+            return result;
+        }
+
+        void clear(){
+            size = 0;
+        }
+    }
+}
@@ -28,6 +28,11 @@ import static io.anuke.mindustry.Vars.*;
  * This class should <i>not</i> call any outside methods to change state of modules, but instead fire events.
  */
 public class Logic implements ApplicationListener{
+    /**
+     * Whether groups of parallel-updating entities, currently bullets, run the read phase of their update on multiple threads.
+     * Off by default, as entities then no longer observe each other's side effects in the exact order replays depend on.
+     */
+    public boolean parallelUpdates;
 
     public Logic(){
         Events.on(WaveEvent.class, event -> {
@@ -95,6 +100,7 @@ public class Logic implements ApplicationListener{
         state.stats = new Stats();
 
         entities.clear();
+        Damage.clearPending();
         Time.clear();
         TileEntity.sleepingEntities = 0;
 
@@ -170,6 +176,14 @@ public class Logic implements ApplicationListener{
         netClient.setQuiet();
     }
 
+    private void updateGroup(EntityGroup<?> group){
+        if(parallelUpdates && group.updatesInParallel()){
+            group.updateParallel();
+        }else{
+            group.update();
+        }
+    }
+
     @Override
     public void update(){
 
@@ -195,14 +209,13 @@ public class Logic implements ApplicationListener{
 
                 if(!state.isEditor()){
                     for(EntityGroup group : unitGroups){
-                        group.update();
+                        updateGroup(group);
                     }
 
-                    puddleGroup.update();
+                    surface.update();
                     shieldGroup.update();
-                    bulletGroup.update();
+                    updateGroup(bulletGroup);
                     tileGroup.update();
-                    fireGroup.update();
                 }else{
                     for(EntityGroup<?> group : unitGroups){
                         group.updateEvents();
@@ -228,6 +241,8 @@ public class Logic implements ApplicationListener{
                     collisions.collideGroups(bulletGroup, playerGroup);
                 }
 
+                Damage.applyPending();
+
                 pathfinder.update();
             }
 
@@ -54,6 +54,13 @@ public class NetClient implements ApplicationListener{
     /** Byte stream for reading in snapshots. */
     private ReusableByteInStream byteStream = new ReusableByteInStream();
     private DataInputStream dataStream = new DataInputStream(byteStream);
+    /** Byte stream for reading in the sync data of a single entity. */
+    private ReusableByteInStream entityStream = new ReusableByteInStream();
+    private DataInputStream entityDataStream = new DataInputStream(entityStream);
+    /** Recently received entity snapshots, used as baselines for delta-encoded entities. */
+    private SnapshotHistory snapshots = new SnapshotHistory();
+    /** ID of the last entity snapshot that was fully received, or -1 if there is none. */
+    private int lastSnapshot = -1;
 
     public NetClient(){
 
@@ -120,7 +127,7 @@ public class NetClient implements ApplicationListener{
 
         net.handleClient(WorldStream.class, data -> {
             Log.info("Recieved world data: {0} bytes.", data.stream.available());
-            NetworkIO.loadWorld(new InflaterInputStream(data.stream));
+            NetworkIO.loadWorld(data.stream);
 
             finishConnecting();
         });
@@ -240,6 +247,8 @@ public class NetClient implements ApplicationListener{
     public static void onWorldDataBegin(){
         entities.clear();
         netClient.removed.clear();
+        netClient.snapshots.clear();
+        netClient.lastSnapshot = -1;
         logic.reset();
 
         ui.chatfrag.clearMessages();
@@ -267,21 +276,57 @@ public class NetClient implements ApplicationListener{
     }
 
     @Remote(variants = Variant.one, priority = PacketPriority.low, unreliable = true)
-    public static void onEntitySnapshot(byte groupID, short amount, short dataLen, byte[] data){
+    public static void onEntitySnapshot(int snapshotID, int baseID, byte groupID, short amount, short dataLen, byte[] data){
+        //the slot of this snapshot was already reused; its data is outdated anyway
+        if(netClient.snapshots.isStale(snapshotID)) return;
+
         try{
             netClient.byteStream.setBytes(net.decompressSnapshot(data, dataLen));
             DataInputStream input = netClient.dataStream;
 
             EntityGroup group = entities.get(groupID);
+            IntMap<byte[]> current = netClient.snapshots.obtain(snapshotID);
+            IntMap<byte[]> base = netClient.snapshots.get(baseID);
+            boolean decoded = true;
 
             //go through each entity
             for(int j = 0; j < amount; j++){
                 int id = input.readInt();
                 byte typeID = input.readByte();
+                byte mode = input.readByte();
+                byte[] last = base == null ? null : base.get(id);
+                byte[] bytes;
+
+                if(mode == SnapshotHistory.modeUnchanged){
+                    if(last == null){
+                        decoded = false;
+                        continue;
+                    }
+                    bytes = last;
+                }else{
+                    bytes = new byte[input.readShort()];
+                    input.readFully(bytes);
+
+                    if(mode == SnapshotHistory.modeDelta){
+                        if(last == null || last.length != bytes.length){
+                            decoded = false;
+                            continue;
+                        }
+
+                        for(int i = 0; i < bytes.length; i++){
+                            bytes[i] ^= last[i];
+                        }
+                    }
+                }
+
+                current.put(id, bytes);
 
                 SyncTrait entity = group == null ? null : (SyncTrait)group.getByID(id);
                 boolean add = false, created = false;
 
+                //entity already has this state
+                if(entity != null && mode == SnapshotHistory.modeUnchanged) continue;
+
                 if(entity == null && id == player.id){
                     entity = player;
                     add = true;
@@ -298,7 +343,8 @@ public class NetClient implements ApplicationListener{
                 }
 
                 //read the entity
-                entity.read(input);
+                netClient.entityStream.setBytes(bytes);
+                entity.read(netClient.entityDataStream);
 
                 if(created && entity.getInterpolator() != null && entity.getInterpolator().target != null){
                     //set initial starting position
@@ -313,14 +359,25 @@ public class NetClient implements ApplicationListener{
                     netClient.addRemovedEntity(entity.getID());
                 }
             }
+
+            //a snapshot with missing baseline data can't be used as a baseline itself
+            if(!decoded){
+                netClient.snapshots.invalidate(snapshotID);
+            }else if(netClient.snapshots.addChunk(snapshotID)){
+                netClient.lastSnapshot = Math.max(netClient.lastSnapshot, snapshotID);
+            }
         }catch(IOException e){
             throw new RuntimeException(e);
         }
     }
 
     @Remote(variants = Variant.one, priority = PacketPriority.low, unreliable = true)
-    public static void onStateSnapshot(float waveTime, int wave, int enemies, short coreDataLen, byte[] coreData){
+    public static void onStateSnapshot(int snapshotID, short chunks, float waveTime, int wave, int enemies, short coreDataLen, byte[] coreData){
         try{
+            if(!netClient.snapshots.isStale(snapshotID) && netClient.snapshots.setTotalChunks(snapshotID, chunks)){
+                netClient.lastSnapshot = Math.max(netClient.lastSnapshot, snapshotID);
+            }
+
             state.wavetime = waveTime;
             state.wave = wave;
             state.enemies = enemies;
@@ -392,6 +449,8 @@ public class NetClient implements ApplicationListener{
         quietReset = false;
         quiet = false;
         lastSent = 0;
+        lastSnapshot = -1;
+        snapshots.clear();
 
         entities.clear();
         ui.chatfrag.clearMessages();
@@ -438,7 +497,7 @@ public class NetClient implements ApplicationListener{
                 requests[i] = player.buildQueue().get(i);
             }
 
-            Call.onClientShapshot(lastSent++, player.x, player.y,
+            Call.onClientShapshot(lastSent++, lastSnapshot, player.x, player.y,
             player.pointerX, player.pointerY, player.rotation, player.baseRotation,
             player.velocity().x, player.velocity().y,
             player.getMineTile(),
@@ -8,6 +8,7 @@ import io.anuke.arc.math.*;
 import io.anuke.arc.math.geom.*;
 import io.anuke.arc.util.*;
 import io.anuke.arc.util.CommandHandler.*;
+import io.anuke.arc.util.async.*;
 import io.anuke.arc.util.io.*;
 import io.anuke.mindustry.content.*;
 import io.anuke.mindustry.core.GameState.*;
@@ -25,6 +26,7 @@ import io.anuke.mindustry.world.*;
 
 import java.io.*;
 import java.nio.*;
+import java.util.*;
 import java.util.zip.*;
 
 import static io.anuke.mindustry.Vars.*;
@@ -33,7 +35,8 @@ public class NetServer implements ApplicationListener{
     public final static int maxSnapshotSize = 430;
     private final static float serverSyncTime = 12, kickDuration = 30 * 1000;
     private final static Vector2 vector = new Vector2();
-    private final static Rectangle viewport = new Rectangle();
+    /** Extra distance around a player's view in which entities are still synced. */
+    private final static float syncMargin = tilesize * 4f;
     /** If a player goes away of their server-side coordinates by this distance, they get teleported back. */
     private final static float correctDist = 16f;
 
@@ -49,8 +52,20 @@ public class NetServer implements ApplicationListener{
     private ReusableByteOutStream syncStream = new ReusableByteOutStream();
     /** Data stream for writing player sync data to. */
     private DataOutputStream dataStream = new DataOutputStream(syncStream);
+    /** Stream for writing the sync data of a single entity to. */
+    private ReusableByteOutStream entityStream = new ReusableByteOutStream();
+    /** Data stream for writing the sync data of a single entity to. */
+    private DataOutputStream entityDataStream = new DataOutputStream(entityStream);
+    /** Map data sent to joining players, shared between them. */
+    private WorldStreamCache worldCache = new WorldStreamCache();
+    /** Builds and compresses player snapshots off the logic thread. */
+    private AsyncExecutor syncExecutor = new AsyncExecutor(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1));
+    /** Timer for syncing all players at once, so that entity sync data can be shared between them. */
+    private Interval syncTimer = new Interval();
 
     public NetServer(){
+        Events.on(WorldLoadEvent.class, event -> worldCache.reset());
+        Events.on(TileChangeEvent.class, event -> worldCache.invalidate(event.tile));
 
         net.handleServer(Connect.class, (con, connect) -> {
             if(admins.isIPBanned(connect.addressTCP)){
@@ -113,6 +128,7 @@ public class NetServer implements ApplicationListener{
                 info.adminUsid = packet.usid;
                 info.lastName = packet.name;
                 info.id = packet.uuid;
+                admins.changed(info);
                 admins.save();
                 Call.onInfoMessage(con, "You are not whitelisted here.");
                 Log.info("&lcDo &lywhitelist-add {0}&lc to whitelist the player &lb'{1}'", packet.uuid, packet.name);
@@ -270,7 +286,9 @@ public class NetServer implements ApplicationListener{
             boolean checkPass(){
                 if(votes >= votesRequired() && target.isAdded() && target.con.isConnected()){
                     Call.sendMessage(Strings.format("[orange]Vote passed.[scarlet] {0}[orange] will be kicked from the server.", target.name));
-                    admins.getInfo(target.uuid).lastKicked = Time.millis() + kickDuration*1000;
+                    PlayerInfo info = admins.getInfo(target.uuid);
+                    info.lastKicked = Time.millis() + kickDuration*1000;
+                    admins.changed(info);
                     target.con.kick(KickReason.vote);
                     map[0] = null;
                     task.cancel();
@@ -394,11 +412,18 @@ public class NetServer implements ApplicationListener{
 
     public void sendWorldData(Player player){
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        DeflaterOutputStream def = new FastDeflaterOutputStream(stream);
-        NetworkIO.writeWorld(player, def);
+        NetworkIO.writeWorld(player, worldCache, stream);
         WorldStream data = new WorldStream();
         data.stream = new ByteArrayInputStream(stream.toByteArray());
-        player.con.sendStream(data);
+
+        //the client discards all entities when loading a world, so old baselines are useless.
+        //snapshots still being built for the old world are dropped, and can't be sent after this
+        synchronized(player.con.snapshots){
+            player.con.snapshots.clear();
+            player.con.worldGeneration++;
+            player.con.lastAckedSnapshot = -1;
+            player.con.sendStream(data);
+        }
 
         Log.debug("Packed {0} compressed bytes of world data.", stream.size());
     }
@@ -432,6 +457,7 @@ public class NetServer implements ApplicationListener{
     public static void onClientShapshot(
         Player player,
         int snapshotID,
+        int ackedSnapshot,
         float x, float y,
         float pointerX, float pointerY,
         float rotation, float baseRotation,
@@ -444,6 +470,10 @@ public class NetServer implements ApplicationListener{
         NetConnection connection = player.con;
         if(connection == null || snapshotID < connection.lastRecievedClientSnapshot) return;
 
+        if(ackedSnapshot > connection.lastAckedSnapshot && ackedSnapshot <= connection.lastSentSnapshot){
+            connection.lastAckedSnapshot = ackedSnapshot;
+        }
+
         boolean verifyPosition = !player.isDead() && netServer.admins.getStrict() && headless;
 
         if(connection.lastRecievedClientTime == 0) connection.lastRecievedClientTime = Time.millis() - 16;
@@ -596,24 +626,12 @@ public class NetServer implements ApplicationListener{
         }
     }
 
-    public void writeSnapshot(Player player) throws IOException{
-        syncStream.reset();
-        ObjectSet<Tile> cores = state.teams.get(player.getTeam()).cores;
-
-        dataStream.writeByte(cores.size);
-
-        for(Tile tile : cores){
-            dataStream.writeInt(tile.pos());
-            tile.entity.items.write(dataStream);
-        }
-
-        dataStream.close();
-        byte[] stateBytes = syncStream.toByteArray();
-
-        //write basic state data.
-        Call.onStateSnapshot(player.con, state.wavetime, state.wave, state.enemies(), (short)stateBytes.length, net.compressSnapshot(stateBytes));
-
-        viewport.setSize(player.con.viewWidth, player.con.viewHeight).setCenter(player.con.viewX, player.con.viewY);
+    /**
+     * Captures the sync data of every synced entity, so that snapshots can be built from it off the logic thread.
+     * Entities are serialized once per sync tick and the result is shared by every player.
+     */
+    SyncView captureSync() throws IOException{
+        SyncView view = new SyncView();
 
         //check for syncable groups
         for(EntityGroup<?> group : entities.all()){
@@ -624,37 +642,162 @@ public class NetServer implements ApplicationListener{
                 throw new RuntimeException("Entity group '" + group.getType() + "' contains SyncTrait entities, yet mapping is not enabled. In order for syncing to work, you must enable mapping for this group.");
             }
 
-            syncStream.reset();
-
-            int sent = 0;
+            GroupView groupView = new GroupView((byte)group.getID(), group.size());
 
-            for(Entity entity :  group.all()){
+            for(Entity entity : group.all()){
                 SyncTrait sync = (SyncTrait)entity;
                 if(!sync.isSyncing()) continue;
 
-                //write all entities now
-                dataStream.writeInt(entity.getID()); //write id
-                dataStream.writeByte(sync.getTypeID().id); //write type ID
-                sync.write(dataStream); //write entity
+                entityStream.reset();
+                sync.write(entityDataStream);
+                entityDataStream.close();
+
+                int index = groupView.size++;
+                groupView.ids[index] = entity.getID();
+                groupView.types[index] = sync.getTypeID().id;
+                groupView.positions[index * 2] = entity.getX();
+                groupView.positions[index * 2 + 1] = entity.getY();
+                groupView.data[index] = entityStream.toByteArray();
+            }
+
+            view.groups.add(groupView);
+        }
+
+        return view;
+    }
+
+    /** Captures the per-player state of a snapshot and queues it to be built and compressed on the sync executor. */
+    void writeSnapshot(Player player, SyncView view) throws IOException{
+        NetConnection con = player.con;
+        int snapshotID = ++con.lastSentSnapshot;
+        int baseID = con.lastAckedSnapshot;
+        float wavetime = state.wavetime;
+        int wave = state.wave, enemies = state.enemies();
+
+        byte[] stateBytes = view.cores.get(player.getTeam());
+        if(stateBytes == null){
+            syncStream.reset();
+            ObjectSet<Tile> cores = state.teams.get(player.getTeam()).cores;
+
+            dataStream.writeByte(cores.size);
+
+            for(Tile tile : cores){
+                dataStream.writeInt(tile.pos());
+                tile.entity.items.write(dataStream);
+            }
+
+            dataStream.close();
+            stateBytes = syncStream.toByteArray();
+            view.cores.put(player.getTeam(), stateBytes);
+        }
+
+        //only entities the player can see are synced; everything else keeps its last known state on the client
+        Rectangle viewport = new Rectangle().setSize(con.viewWidth + syncMargin * 2f, con.viewHeight + syncMargin * 2f).setCenter(con.viewX, con.viewY);
+        byte[] coreData = stateBytes;
+        int generation = con.worldGeneration;
+
+        con.syncTask = syncExecutor.submit(() -> {
+            try{
+                Array<SnapshotChunk> chunks = buildSnapshot(con, player.id, view, viewport, snapshotID, baseID, generation);
+                if(chunks == null) return null;
+                byte[] compressedCores = net.compressSnapshot(coreData);
 
-                sent++;
+                if(!con.isConnected()) return null;
 
-                if(syncStream.size() > maxSnapshotSize){
-                    dataStream.close();
-                    byte[] syncBytes = syncStream.toByteArray();
-                    Call.onEntitySnapshot(player.con, (byte)group.getID(), (short)sent, (short)syncBytes.length, net.compressSnapshot(syncBytes));
-                    sent = 0;
-                    syncStream.reset();
+                synchronized(con.snapshots){
+                    //entities of the previous world must not arrive after the data of a new one
+                    if(con.worldGeneration != generation) return null;
+
+                    //remote calls and connections are thread-safe, so the finished packets go straight to the connection
+                    for(SnapshotChunk chunk : chunks){
+                        Call.onEntitySnapshot(con, snapshotID, baseID, chunk.groupID, chunk.amount, chunk.length, chunk.data);
+                    }
+
+                    //write basic state data, along with the amount of entity chunks so the client knows when the snapshot is complete
+                    Call.onStateSnapshot(con, snapshotID, (short)chunks.size, wavetime, wave, enemies, (short)coreData.length, compressedCores);
+                }
+            }catch(Exception e){
+                Log.err("Failed to send snapshot {0} to {1}.", snapshotID, con.address);
+                Log.err(e);
+
+                //the client may not get all of this snapshot, so it can't be used as a baseline
+                synchronized(con.snapshots){
+                    con.snapshots.invalidate(snapshotID);
                 }
             }
+            return null;
+        });
+    }
 
-            if(sent > 0){
-                dataStream.close();
+    /**
+     * Builds and compresses the entity chunks of a snapshot. Runs on the sync executor.
+     * @return the chunks, or null if world data was sent since the snapshot was captured.
+     */
+    private static @Nullable Array<SnapshotChunk> buildSnapshot(NetConnection con, int playerID, SyncView view, Rectangle viewport, int snapshotID, int baseID, int generation) throws IOException{
+        ReusableByteOutStream stream = new ReusableByteOutStream();
+        DataOutputStream output = new DataOutputStream(stream);
+        Array<SnapshotChunk> chunks = new Array<>();
+
+        synchronized(con.snapshots){
+            //don't record a baseline of the previous world
+            if(con.worldGeneration != generation) return null;
+
+            IntMap<byte[]> sent = con.snapshots.obtain(snapshotID);
+            IntMap<byte[]> base = con.snapshots.get(baseID);
+
+            for(GroupView group : view.groups){
+                stream.reset();
+
+                int amount = 0;
+
+                for(int i = 0; i < group.size; i++){
+                    int id = group.ids[i];
+                    if(id != playerID && !viewport.contains(group.positions[i * 2], group.positions[i * 2 + 1])) continue;
+
+                    byte[] bytes = group.data[i];
+                    byte[] last = base == null ? null : base.get(id);
+                    sent.put(id, bytes);
+
+                    output.writeInt(id); //write id
+                    output.writeByte(group.types[i]); //write type ID
+
+                    //write entity, relative to the last state the client is known to have
+                    if(last == null || last.length != bytes.length){
+                        output.writeByte(SnapshotHistory.modeFull);
+                        output.writeShort(bytes.length);
+                        output.write(bytes);
+                    }else if(Arrays.equals(last, bytes)){
+                        output.writeByte(SnapshotHistory.modeUnchanged);
+                    }else{
+                        output.writeByte(SnapshotHistory.modeDelta);
+                        output.writeShort(bytes.length);
+                        for(int j = 0; j < bytes.length; j++){
+                            output.writeByte(bytes[j] ^ last[j]);
+                        }
+                    }
+
+                    amount++;
+
+                    if(stream.size() > maxSnapshotSize){
+                        addChunk(chunks, group.id, amount, output, stream);
+                        amount = 0;
+                        stream.reset();
+                    }
+                }
 
-                byte[] syncBytes = syncStream.toByteArray();
-                Call.onEntitySnapshot(player.con, (byte)group.getID(), (short)sent, (short)syncBytes.length, net.compressSnapshot(syncBytes));
+                if(amount > 0){
+                    addChunk(chunks, group.id, amount, output, stream);
+                }
             }
         }
+
+        return chunks;
+    }
+
+    private static void addChunk(Array<SnapshotChunk> chunks, byte groupID, int amount, DataOutputStream output, ReusableByteOutStream stream) throws IOException{
+        output.close();
+        byte[] syncBytes = stream.toByteArray();
+        chunks.add(new SnapshotChunk(groupID, (short)amount, (short)syncBytes.length, net.compressSnapshot(syncBytes)));
     }
 
     String fixName(String name){
@@ -708,8 +851,12 @@ public class NetServer implements ApplicationListener{
     }
 
     void sync(){
+        if(!syncTimer.get(serverSyncTime)) return;
+
+        surface.sync();
 
         try{
+            SyncView view = null;
 
             //iterate through each player
             for(int i = 0; i < playerGroup.size(); i++){
@@ -724,13 +871,57 @@ public class NetServer implements ApplicationListener{
                     return;
                 }
 
-                if(!player.timer.get(Player.timerSync, serverSyncTime) || !connection.hasConnected) continue;
+                //the last snapshot of this player is still being built, so skip this one instead of piling up work
+                if(!connection.hasConnected || (connection.syncTask != null && !connection.syncTask.isDone())) continue;
+
+                //every player shares one view, so it is captured once per sync tick; only the capture runs on the logic thread
+                if(view == null) view = captureSync();
 
-                writeSnapshot(player);
+                writeSnapshot(player, view);
             }
 
         }catch(IOException e){
             e.printStackTrace();
         }
     }
+
+    /** Sync data of every synced entity in one sync tick. Not modified after being captured, except for lazily added core data. */
+    static class SyncView{
+        final Array<GroupView> groups = new Array<>();
+        /** Serialized core items of each team. Only accessed on the logic thread. */
+        final ObjectMap<Team, byte[]> cores = new ObjectMap<>();
+    }
+
+    /** Sync data of the synced entities in one entity group. */
+    static class GroupView{
+        final byte id;
+        final int[] ids;
+        final byte[] types;
+        /** Position of each entity, stored as x, y pairs. */
+        final float[] positions;
+        final byte[][] data;
+        int size;
+
+        GroupView(byte id, int capacity){
+            this.id = id;
+            this.ids = new int[capacity];
+            this.types = new byte[capacity];
+            this.positions = new float[capacity * 2];
+            this.data = new byte[capacity][];
+        }
+    }
+
+    /** A compressed chunk of entities of one group, ready to be sent. */
+    static class SnapshotChunk{
+        final byte groupID;
+        final short amount, length;
+        final byte[] data;
+
+        SnapshotChunk(byte groupID, short amount, short length, byte[] data){
+            this.groupID = groupID;
+            this.amount = amount;
+            this.length = length;
+            this.data = data;
+        }
+    }
 }
@@ -224,7 +224,7 @@ public class Renderer implements ApplicationListener{
         blocks.floor.drawFloor();
 
         groundEffectGroup.draw(e -> e instanceof BelowLiquidTrait);
-        puddleGroup.draw();
+        surface.draw();
         groundEffectGroup.draw(e -> !(e instanceof BelowLiquidTrait));
 
         blocks.processBlocks();
@@ -0,0 +1,24 @@
+package io.anuke.mindustry.entities;
+
+import io.anuke.arc.collection.*;
+import io.anuke.arc.function.*;
+import io.anuke.mindustry.entities.traits.*;
+
+/** Spatial index over the solid entities of an {@link EntityGroup}, used for collision and range queries. */
+public interface Broadphase{
+
+    /** Sets the area covered by this index and removes all entities from it. */
+    void resize(float x, float y, float width, float height);
+
+    /** Updates the position of every solid entity in this array. Called once per frame, before entities are updated. */
+    void update(Array<? extends Entity> entities);
+
+    /** Removes an entity that has left its group. */
+    void remove(SolidTrait entity);
+
+    /** Removes all entities. */
+    void clear();
+
+    /** Passes every entity whose hitbox overlaps this rectangle to the consumer. */
+    void intersect(float x, float y, float width, float height, Consumer<? super SolidTrait> out);
+}
@@ -1,14 +1,13 @@
 package io.anuke.mindustry.entities;
 
-import io.anuke.annotations.Annotations.Struct;
 import io.anuke.arc.*;
-import io.anuke.arc.collection.GridBits;
-import io.anuke.arc.collection.IntQueue;
+import io.anuke.arc.collection.*;
 import io.anuke.arc.function.*;
 import io.anuke.arc.graphics.Color;
 import io.anuke.arc.math.Mathf;
 import io.anuke.arc.math.geom.*;
 import io.anuke.arc.util.*;
+import io.anuke.arc.util.pooling.Pools;
 import io.anuke.mindustry.content.Bullets;
 import io.anuke.mindustry.content.Fx;
 import io.anuke.mindustry.entities.Effects.Effect;
@@ -19,8 +18,8 @@ import io.anuke.mindustry.entities.type.Unit;
 import io.anuke.mindustry.game.EventType.*;
 import io.anuke.mindustry.game.Team;
 import io.anuke.mindustry.gen.Call;
-import io.anuke.mindustry.gen.PropCell;
 import io.anuke.mindustry.graphics.Pal;
+import io.anuke.mindustry.world.Pos;
 import io.anuke.mindustry.world.Tile;
 
 import static io.anuke.mindustry.Vars.*;
@@ -30,8 +29,16 @@ public class Damage{
     private static Rectangle rect = new Rectangle();
     private static Rectangle hitrect = new Rectangle();
     private static Vector2 tr = new Vector2();
-    private static GridBits bits = new GridBits(30, 30);
-    private static IntQueue propagation = new IntQueue();
+    /** Tiles reached by the current tile damage propagation. */
+    private static IntSet visited = new IntSet();
+    /** Positions and damage of the tiles in the current ring, and damage spreading into the next ring. */
+    private static IntArray ring = new IntArray(), ringDamage = new IntArray();
+    private static IntIntMap next = new IntIntMap();
+    /** Radial damage queued this tick. */
+    private static Array<DamageRequest> pending = new Array<>(), applying = new Array<>();
+    /** Units in the area of each cluster of overlapping requests. */
+    private static Array<Array<Unit>> clusterUnits = new Array<>();
+    private static Array<Rectangle> clusterRects = new Array<>();
 
     /** Creates a dynamic explosion based on specified parameters. */
     public static void dynamicExplosion(float x, float y, float flammability, float explosiveness, float power, float radius, Color color){
@@ -178,22 +185,96 @@ public class Damage{
         damage(team, x, y, radius, damage, false);
     }
 
-    /** Damages all entities and blocks in a radius that are enemies of the team. */
+    /**
+     * Damages all entities and blocks in a radius that are enemies of the team.
+     * Unless the damage is complete, it is queued and applied together with all other damage of this tick in {@link #applyPending()}.
+     */
     public static void damage(Team team, float x, float y, float radius, float damage, boolean complete){
-        Consumer<Unit> cons = entity -> {
-            if(entity.getTeam() == team || entity.dst(x, y) > radius){
-                return;
+        if(complete){
+            applyDamage(team, x, y, radius, damage, true);
+            return;
+        }
+
+        DamageRequest request = Pools.obtain(DamageRequest.class, DamageRequest::new);
+        request.set(team, x, y, radius, damage);
+        pending.add(request);
+    }
+
+    /**
+     * Applies all queued radial damage. Requests with overlapping areas are merged into one cluster,
+     * and units are only queried once per cluster instead of once per request.
+     * Requests are still applied one at a time in the order they were made, each to units and then to tiles with its own falloff,
+     * the same as damage applied right away.
+     */
+    public static void applyPending(){
+        //damage may cause blocks to explode, queueing more damage
+        while(pending.size > 0){
+            applying.clear();
+            applying.addAll(pending);
+            pending.clear();
+
+            int clusterCount = 0;
+            for(int r = 0; r < applying.size; r++){
+                DamageRequest request = applying.get(r);
+                int cluster = -1;
+                for(int i = 0; i < clusterCount; i++){
+                    if(clusterRects.get(i).overlaps(request.rect)){
+                        cluster = i;
+                        clusterRects.get(i).merge(request.rect);
+                        break;
+                    }
+                }
+
+                if(cluster == -1){
+                    if(clusterUnits.size <= clusterCount){
+                        clusterUnits.add(new Array<>());
+                        clusterRects.add(new Rectangle());
+                    }
+                    cluster = clusterCount++;
+                    clusterRects.get(cluster).set(request.rect);
+                }
+                request.cluster = cluster;
             }
-            float amount = calculateDamage(x, y, entity.x, entity.y, radius, damage);
-            entity.damage(amount);
-            //TODO better velocity displacement
-            float dst = tr.set(entity.x - x, entity.y - y).len();
-            entity.velocity().add(tr.setLength((1f - dst / radius) * 2f / entity.mass()));
-
-            if(complete && damage >= 9999999f && entity == player){
-                Events.fire(Trigger.exclusionDeath);
+
+            for(int i = 0; i < clusterCount; i++){
+                clusterUnits.get(i).clear();
+                Units.nearby(clusterRects.get(i), clusterUnits.get(i)::add);
             }
-        };
+
+            for(int r = 0; r < applying.size; r++){
+                DamageRequest request = applying.get(r);
+                Array<Unit> units = clusterUnits.get(request.cluster);
+                for(int i = 0; i < units.size; i++){
+                    Unit entity = units.get(i);
+                    if(request.team == null || state.teams.areEnemies(request.team, entity.getTeam())){
+                        damageUnit(entity, request.team, request.x, request.y, request.radius, request.damage, false);
+                    }
+                }
+
+                int trad = (int)(request.radius / tilesize);
+                Tile tile = world.tileWorld(request.x, request.y);
+                if(tile != null){
+                    tileDamage(request.team, tile.x, tile.y, trad, request.damage);
+                }
+                Pools.free(request);
+            }
+            applying.clear();
+
+            //don't hold on to dead units
+            for(int i = 0; i < clusterCount; i++){
+                clusterUnits.get(i).clear();
+            }
+        }
+    }
+
+    /** Discards all queued damage. */
+    public static void clearPending(){
+        Pools.freeAll(pending);
+        pending.clear();
+    }
+
+    private static void applyDamage(Team team, float x, float y, float radius, float damage, boolean complete){
+        Consumer<Unit> cons = entity -> damageUnit(entity, team, x, y, radius, damage, complete);
 
         rect.setSize(radius * 2).setCenter(x, y);
         if(team != null){
@@ -213,46 +294,74 @@ public class Damage{
         }
     }
 
-    public static void tileDamage(Team team, int startx, int starty, int radius, float baseDamage){
-        bits.clear();
-        propagation.clear();
-        int bitOffset = bits.width() / 2;
-
-        propagation.addFirst(PropCell.get((byte)0, (byte)0, (short)baseDamage));
-        //clamp radius to fit bits
-        radius = Math.min(radius, bits.width() / 2);
-
-        while(!propagation.isEmpty()){
-            int prop = propagation.removeLast();
-            int x = PropCell.x(prop);
-            int y = PropCell.y(prop);
-            int damage = PropCell.damage(prop);
-            //manhattan distance used for calculating falloff, results in a diamond pattern
-            int dst = Math.abs(x) + Math.abs(y);
-
-            int scaledDamage = (int)(damage * (1f - (float)dst / radius));
-
-            bits.set(bitOffset + x, bitOffset + y);
-            Tile tile = world.ltile(startx + x, starty + y);
-
-            if(scaledDamage <= 0 || tile == null) continue;
+    private static void damageUnit(Unit entity, Team team, float x, float y, float radius, float damage, boolean complete){
+        if(entity.getTeam() == team || entity.dst(x, y) > radius){
+            return;
+        }
+        float amount = calculateDamage(x, y, entity.x, entity.y, radius, damage);
+        entity.damage(amount);
+        //TODO better velocity displacement
+        float dst = tr.set(entity.x - x, entity.y - y).len();
+        entity.velocity().add(tr.setLength((1f - dst / radius) * 2f / entity.mass()));
+
+        if(complete && damage >= 9999999f && entity == player){
+            Events.fire(Trigger.exclusionDeath);
+        }
+    }
 
-            //apply damage to entity if needed
-            if(tile.entity != null && tile.getTeam() != team){
-                int health = (int)tile.entity.health;
-                if(tile.entity.health > 0){
-                    tile.entity.damage(scaledDamage);
-                    scaledDamage -= health;
+    /**
+     * Damages tiles in a diamond around a position, processing one ring of equal manhattan distance at a time.
+     * Damage that is not absorbed by a tile spreads to its neighbours in the next ring. When several neighbours
+     * spread into the same tile, the highest damage is used.
+     */
+    public static void tileDamage(Team team, int startx, int starty, int radius, float baseDamage){
+        visited.clear();
+        ring.clear();
+        ringDamage.clear();
+        next.clear();
+
+        ring.add(Pos.get(startx, starty));
+        ringDamage.add((int)baseDamage);
+        visited.add(Pos.get(startx, starty));
+
+        //manhattan distance used for calculating falloff, results in a diamond pattern
+        for(int dst = 0; dst < radius && ring.size > 0; dst++){
+            for(int i = 0; i < ring.size; i++){
+                int pos = ring.get(i);
+                int x = Pos.x(pos), y = Pos.y(pos);
+                int scaledDamage = (int)(ringDamage.get(i) * (1f - (float)dst / radius));
+
+                Tile tile = world.ltile(x, y);
+
+                if(scaledDamage <= 0 || tile == null) continue;
+
+                //apply damage to entity if needed
+                if(tile.entity != null && tile.getTeam() != team){
+                    int health = (int)tile.entity.health;
+                    if(tile.entity.health > 0){
+                        tile.entity.damage(scaledDamage);
+                        scaledDamage -= health;
+
+                        if(scaledDamage <= 0) continue;
+                    }
+                }
 
-                    if(scaledDamage <= 0) continue;
+                for(Point2 p : Geometry.d4){
+                    int other = Pos.get(x + p.x, y + p.y);
+                    if(!visited.contains(other)){
+                        next.put(other, Math.max(next.get(other, 0), scaledDamage));
+                    }
                 }
             }
 
-            for(Point2 p : Geometry.d4){
-                if(!bits.get(bitOffset + x + p.x, bitOffset + y + p.y)){
-                    propagation.addFirst(PropCell.get((byte)(x + p.x), (byte)(y + p.y), (short)scaledDamage));
-                }
+            ring.clear();
+            ringDamage.clear();
+            for(IntIntMap.Entry entry : next.entries()){
+                ring.add(entry.key);
+                ringDamage.add(entry.value);
+                visited.add(entry.key);
             }
+            next.clear();
         }
     }
 
@@ -275,10 +384,21 @@ public class Damage{
         return damage * scaled;
     }
 
-    @Struct
-    class PropCellStruct{
-        byte x;
-        byte y;
-        short damage;
+    static class DamageRequest{
+        Team team;
+        float x, y, radius, damage;
+        /** Index of the cluster this request was merged into. */
+        int cluster;
+        /** Area in which units can be hit. */
+        final Rectangle rect = new Rectangle();
+
+        void set(Team team, float x, float y, float radius, float damage){
+            this.team = team;
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.damage = damage;
+            rect.setSize(radius * 2).setCenter(x, y);
+        }
     }
 }
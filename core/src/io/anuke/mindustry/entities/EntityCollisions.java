@@ -1,6 +1,7 @@
 package io.anuke.mindustry.entities;
 
 import io.anuke.arc.collection.Array;
+import io.anuke.arc.function.Consumer;
 import io.anuke.arc.math.Mathf;
 import io.anuke.arc.math.geom.*;
 import io.anuke.mindustry.entities.traits.Entity;
@@ -25,6 +26,7 @@ public class EntityCollisions{
 
     //entity collisions
     private Array<SolidTrait> arrOut = new Array<>();
+    private Consumer<SolidTrait> arrAdder = arrOut::add;
 
     public void move(SolidTrait entity, float deltax, float deltay){
 
@@ -107,19 +109,16 @@ public class EntityCollisions{
         return false;
     }
 
-    @SuppressWarnings("unchecked")
     public <T extends Entity> void updatePhysics(EntityGroup<T> group){
 
-        QuadTree tree = group.tree();
-        tree.clear();
-
         for(Entity entity : group.all()){
             if(entity instanceof SolidTrait){
                 SolidTrait s = (SolidTrait)entity;
                 s.lastPosition().set(s.getX(), s.getY());
-                tree.insert(s);
             }
         }
+
+        group.broadphase().update(group.all());
     }
 
     private static boolean solid(int x, int y){
@@ -223,7 +222,7 @@ public class EntityCollisions{
             r2.merge(r1);
 
             arrOut.clear();
-            groupb.tree().getIntersect(arrOut, r2);
+            groupb.broadphase().intersect(r2.x, r2.y, r2.width, r2.height, arrAdder);
 
             for(SolidTrait sc : arrOut){
                 sc.hitbox(r1);
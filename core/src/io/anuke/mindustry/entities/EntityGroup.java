@@ -7,19 +7,27 @@ import io.anuke.arc.graphics.*;
 import io.anuke.arc.math.geom.*;
 import io.anuke.mindustry.entities.traits.*;
 
+import java.util.concurrent.*;
+
 import static io.anuke.mindustry.Vars.collisions;
 
 /** Represents a group of a certain type of entity.*/
 @SuppressWarnings("unchecked")
 public class EntityGroup<T extends Entity>{
-    private final boolean useTree;
+    /** Minimum amount of entities before a group is updated in parallel. */
+    private static final int minParallelSize = 256;
+    /** Amount of entities processed by one worker task. */
+    private static final int parallelSliceSize = 64;
+
     private final int id;
     private final Class<T> type;
+    /** Whether every entity of this group implements {@link ParallelUpdateTrait}. */
+    private final boolean parallel;
     private final Array<T> entityArray = new Array<>(false, 32);
     private final Array<T> entitiesToRemove = new Array<>(false, 32);
     private final Array<T> entitiesToAdd = new Array<>(false, 32);
     private IntMap<T> map;
-    private QuadTree tree;
+    private Broadphase broadphase;
     private Consumer<T> removeListener;
     private Consumer<T> addListener;
 
@@ -27,12 +35,12 @@ public class EntityGroup<T extends Entity>{
     private int count = 0;
 
     public EntityGroup(int id, Class<T> type, boolean useTree){
-        this.useTree = useTree;
         this.id = id;
         this.type = type;
+        this.parallel = ParallelUpdateTrait.class.isAssignableFrom(type);
 
         if(useTree){
-            tree = new QuadTree<>(new Rectangle(0, 0, 0, 0));
+            broadphase = new QuadTreeBroadphase();
         }
     }
 
@@ -48,6 +56,38 @@ public class EntityGroup<T extends Entity>{
         }
     }
 
+    /**
+     * Updates all entities, running their parallel phase on the common fork-join pool.
+     * Groups that aren't {@link #updatesInParallel()} and small groups are updated like in {@link #update()}.
+     */
+    public void updateParallel(){
+        if(!parallel || entityArray.size < minParallelSize){
+            update();
+            return;
+        }
+
+        updateEvents();
+
+        if(useTree()){
+            collisions.updatePhysics(this);
+        }
+
+        for(Entity e : all()){
+            ((ParallelUpdateTrait)e).updateBegin();
+        }
+
+        ForkJoinPool.commonPool().invoke(new ParallelSlice(entityArray, 0, entityArray.size));
+
+        for(Entity e : all()){
+            ((ParallelUpdateTrait)e).updateApply();
+        }
+    }
+
+    /** @return whether the entities of this group implement {@link ParallelUpdateTrait}, so that {@link #updateParallel()} can split their updates. */
+    public boolean updatesInParallel(){
+        return parallel;
+    }
+
     public int countInBounds(){
         count = 0;
         draw(e -> true, e -> count++);
@@ -77,7 +117,7 @@ public class EntityGroup<T extends Entity>{
     }
 
     public boolean useTree(){
-        return useTree;
+        return broadphase != null;
     }
 
     public void setRemoveListener(Consumer<T> removeListener){
@@ -88,6 +128,12 @@ public class EntityGroup<T extends Entity>{
         this.addListener = addListener;
     }
 
+    /** Replaces the spatial index used for collisions and intersection queries in this group. */
+    public EntityGroup<T> setBroadphase(Broadphase broadphase){
+        this.broadphase = broadphase;
+        return this;
+    }
+
     public EntityGroup<T> enableMapping(){
         map = new IntMap<>();
         return this;
@@ -125,6 +171,9 @@ public class EntityGroup<T extends Entity>{
             if(map != null){
                 map.remove(e.getID());
             }
+            if(broadphase != null && e instanceof SolidTrait){
+                broadphase.remove((SolidTrait)e);
+            }
             e.removed();
         }
 
@@ -158,18 +207,18 @@ public class EntityGroup<T extends Entity>{
     public void intersect(float x, float y, float width, float height, Consumer<? super T> out){
         //don't waste time for empty groups
         if(isEmpty()) return;
-        tree().getIntersect(out, x, y, width, height);
+        broadphase().intersect(x, y, width, height, (Consumer)out);
     }
 
-    public QuadTree tree(){
-        if(!useTree) throw new RuntimeException("This group does not support quadtrees! Enable quadtrees when creating it.");
-        return tree;
+    public Broadphase broadphase(){
+        if(broadphase == null) throw new RuntimeException("This group does not support spatial queries! Enable a broadphase when creating it.");
+        return broadphase;
     }
 
-    /** Resizes the internal quadtree, if it is enabled.*/
+    /** Resizes the internal broadphase, if it is enabled.*/
     public void resize(float x, float y, float w, float h){
-        if(useTree){
-            tree = new QuadTree<>(new Rectangle(x, y, w, h));
+        if(broadphase != null){
+            broadphase.resize(x, y, w, h);
         }
     }
 
@@ -231,6 +280,8 @@ public class EntityGroup<T extends Entity>{
         entityArray.clear();
         if(map != null)
             map.clear();
+        if(broadphase != null)
+            broadphase.clear();
     }
 
     public T find(Predicate<T> pred){
@@ -246,4 +297,28 @@ public class EntityGroup<T extends Entity>{
     public Array<T> all(){
         return entityArray;
     }
+
+    /** Runs the parallel phase over a slice of the group, splitting it further if it is too large. */
+    private static class ParallelSlice extends RecursiveAction{
+        final Array<? extends Entity> entities;
+        final int from, to;
+
+        ParallelSlice(Array<? extends Entity> entities, int from, int to){
+            this.entities = entities;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= parallelSliceSize){
+                for(int i = from; i < to; i++){
+                    ((ParallelUpdateTrait)entities.get(i)).updateParallel();
+                }
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParallelSlice(entities, from, mid), new ParallelSlice(entities, mid, to));
+            }
+        }
+    }
 }
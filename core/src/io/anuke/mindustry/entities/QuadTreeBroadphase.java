@@ -0,0 +1,43 @@
+package io.anuke.mindustry.entities;
+
+import io.anuke.arc.collection.*;
+import io.anuke.arc.function.*;
+import io.anuke.arc.math.geom.*;
+import io.anuke.mindustry.entities.traits.*;
+
+/** Broadphase backed by a quadtree that is rebuilt from scratch every frame. */
+public class QuadTreeBroadphase implements Broadphase{
+    private QuadTree<SolidTrait> tree = new QuadTree<>(new Rectangle(0, 0, 0, 0));
+
+    @Override
+    public void resize(float x, float y, float width, float height){
+        tree = new QuadTree<>(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void update(Array<? extends Entity> entities){
+        tree.clear();
+
+        for(Entity entity : entities){
+            if(entity instanceof SolidTrait){
+                tree.insert((SolidTrait)entity);
+            }
+        }
+    }
+
+    @Override
+    public void remove(SolidTrait entity){
+        //the tree is rebuilt every frame, nothing to do here
+    }
+
+    @Override
+    public void clear(){
+        tree.clear();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void intersect(float x, float y, float width, float height, Consumer<? super SolidTrait> out){
+        tree.getIntersect((Consumer<SolidTrait>)out, x, y, width, height);
+    }
+}
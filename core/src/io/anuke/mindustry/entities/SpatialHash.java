@@ -0,0 +1,166 @@
+package io.anuke.mindustry.entities;
+
+import io.anuke.arc.collection.*;
+import io.anuke.arc.function.*;
+import io.anuke.arc.math.geom.*;
+import io.anuke.mindustry.entities.traits.*;
+
+import java.util.*;
+
+/**
+ * Broadphase that buckets entities into a uniform grid of cells by the center of their hitbox.
+ * Buckets store primitive slot indices, and entities are only moved between buckets when they cross into another cell,
+ * so nothing is rebuilt or allocated for entities that stay put.
+ */
+public class SpatialHash implements Broadphase{
+    private final float cellSize;
+    private final Rectangle rect = new Rectangle();
+    private final ObjectIntMap<SolidTrait> slotMap = new ObjectIntMap<>();
+    private final IntArray freeSlots = new IntArray();
+
+    private float offsetX, offsetY;
+    private int width = 1, height = 1;
+    /** Slot indices in each cell. Allocated on first use. */
+    private int[][] buckets = new int[1][];
+    private int[] bucketSizes = new int[1];
+
+    /** Entity, cell and index in that cell's bucket of every slot. */
+    private SolidTrait[] slots = new SolidTrait[64];
+    private int[] slotCells = new int[64], slotIndices = new int[64];
+    private int slotCount;
+    /** Half of the largest hitbox dimension seen; queries are expanded by this, as entities are only stored in one cell. */
+    private float maxExtent;
+
+    public SpatialHash(float cellSize){
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void resize(float x, float y, float width, float height){
+        this.offsetX = x;
+        this.offsetY = y;
+        this.width = Math.max((int)Math.ceil(width / cellSize), 1);
+        this.height = Math.max((int)Math.ceil(height / cellSize), 1);
+        this.buckets = new int[this.width * this.height][];
+        this.bucketSizes = new int[this.width * this.height];
+
+        Arrays.fill(slots, null);
+        slotMap.clear();
+        freeSlots.clear();
+        slotCount = 0;
+        maxExtent = 0f;
+    }
+
+    @Override
+    public void update(Array<? extends Entity> entities){
+        for(int i = 0; i < entities.size; i++){
+            Entity entity = entities.get(i);
+            if(!(entity instanceof SolidTrait)) continue;
+
+            SolidTrait solid = (SolidTrait)entity;
+            solid.hitbox(rect);
+            maxExtent = Math.max(maxExtent, Math.max(rect.width, rect.height) / 2f);
+
+            int cell = cell(rect.x + rect.width / 2f, rect.y + rect.height / 2f);
+            int slot = slotMap.get(solid, -1);
+
+            if(slot == -1){
+                slot = obtainSlot();
+                slots[slot] = solid;
+                slotMap.put(solid, slot);
+                insert(slot, cell);
+            }else if(slotCells[slot] != cell){
+                removeFromBucket(slot);
+                insert(slot, cell);
+            }
+        }
+    }
+
+    @Override
+    public void remove(SolidTrait entity){
+        int slot = slotMap.remove(entity, -1);
+        if(slot == -1) return;
+
+        removeFromBucket(slot);
+        slots[slot] = null;
+        freeSlots.add(slot);
+    }
+
+    @Override
+    public void clear(){
+        resize(offsetX, offsetY, width * cellSize, height * cellSize);
+    }
+
+    @Override
+    public void intersect(float x, float y, float width, float height, Consumer<? super SolidTrait> out){
+        int minx = cellX(x - maxExtent), miny = cellY(y - maxExtent);
+        int maxx = cellX(x + width + maxExtent), maxy = cellY(y + height + maxExtent);
+
+        for(int cx = minx; cx <= maxx; cx++){
+            for(int cy = miny; cy <= maxy; cy++){
+                int cell = cx + cy * this.width;
+                int[] bucket = buckets[cell];
+
+                for(int i = 0; i < bucketSizes[cell]; i++){
+                    SolidTrait solid = slots[bucket[i]];
+                    solid.hitbox(rect);
+                    if(rect.overlaps(x, y, width, height)){
+                        out.accept(solid);
+                    }
+                }
+            }
+        }
+    }
+
+    private int obtainSlot(){
+        if(freeSlots.size > 0){
+            return freeSlots.pop();
+        }
+
+        if(slotCount == slots.length){
+            slots = Arrays.copyOf(slots, slotCount * 2);
+            slotCells = Arrays.copyOf(slotCells, slotCount * 2);
+            slotIndices = Arrays.copyOf(slotIndices, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void insert(int slot, int cell){
+        int[] bucket = buckets[cell];
+        int size = bucketSizes[cell];
+
+        if(bucket == null){
+            bucket = buckets[cell] = new int[4];
+        }else if(size == bucket.length){
+            bucket = buckets[cell] = Arrays.copyOf(bucket, size * 2);
+        }
+
+        bucket[size] = slot;
+        bucketSizes[cell] = size + 1;
+        slotCells[slot] = cell;
+        slotIndices[slot] = size;
+    }
+
+    private void removeFromBucket(int slot){
+        int cell = slotCells[slot];
+        int[] bucket = buckets[cell];
+        int last = --bucketSizes[cell];
+
+        //swap the last slot of the bucket into the removed one's place
+        int moved = bucket[last];
+        bucket[slotIndices[slot]] = moved;
+        slotIndices[moved] = slotIndices[slot];
+    }
+
+    private int cell(float x, float y){
+        return cellX(x) + cellY(y) * width;
+    }
+
+    private int cellX(float x){
+        return Math.min(Math.max((int)((x - offsetX) / cellSize), 0), width - 1);
+    }
+
+    private int cellY(float y){
+        return Math.min(Math.max((int)((y - offsetY) / cellSize), 0), height - 1);
+    }
+}
@@ -0,0 +1,602 @@
+package io.anuke.mindustry.entities.effect;
+
+import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.*;
+import io.anuke.arc.collection.*;
+import io.anuke.arc.collection.IntSet.*;
+import io.anuke.arc.function.*;
+import io.anuke.arc.graphics.*;
+import io.anuke.arc.graphics.g2d.*;
+import io.anuke.arc.math.*;
+import io.anuke.arc.math.geom.*;
+import io.anuke.arc.util.*;
+import io.anuke.mindustry.content.*;
+import io.anuke.mindustry.entities.*;
+import io.anuke.mindustry.entities.type.*;
+import io.anuke.mindustry.game.EventType.*;
+import io.anuke.mindustry.gen.*;
+import io.anuke.mindustry.type.*;
+import io.anuke.mindustry.world.*;
+
+import java.io.*;
+import java.util.*;
+
+import static io.anuke.mindustry.Vars.*;
+
+/**
+ * Liquid spills and fires on the tiles of the world, stored in flat arrays over the world grid.
+ * Only active cells, which have liquid or fire on them, are updated.
+ * The server sends changed cells to clients as deltas of {@link #regionSize}x{@link #regionSize} tile regions.
+ */
+public class SurfaceGrid{
+    /** Size of the square regions that changes are synced in. */
+    public static final int regionSize = 16;
+    private static final float maxLiquid = 70f, baseLifetime = 1000f, spreadChance = 0.05f, fireballChance = 0.07f, effectInterval = 20f;
+    private static final int maxGeneration = 2;
+    private static final Color tmp = new Color();
+    private static final Rectangle rect = new Rectangle(), rect2 = new Rectangle();
+    private static final Predicate<Unit> burnable = unit -> !unit.isFlying() && !unit.isImmune(StatusEffects.burning);
+    private static final Consumer<Unit> burn = unit -> unit.applyEffect(StatusEffects.burning, 60 * 5);
+
+    private int width, height;
+    /** Liquid ID + 1 of each cell, or 0 if it has no liquid. */
+    private byte[] liquids = {};
+    /** Liquid amount of each cell. On clients, this is interpolated towards the synced target amount. */
+    private float[] amounts = {}, targets = {};
+    private float[] accepting = {}, ripples = {};
+    private byte[] generations = {};
+    /** Elapsed time and lifetime of the fire in each cell. Cells with a lifetime of 0 are not burning. */
+    private float[] fireTimes = {}, fireLifetimes = {};
+    /** Flammability of the block and liquid of each burning cell. */
+    private float[] flammabilities = {};
+    /** State of each cell last sent to clients. Server only. */
+    private int[] synced = {};
+
+    /** Cells that have liquid or fire on them. */
+    private final IntSet active = new IntSet();
+    /** Cells that were activated or cleared since the last sync. Server only. */
+    private final IntSet changed = new IntSet();
+    private final IntArray stepping = new IntArray();
+    private final IntMap<IntArray> changedRegions = new IntMap<>();
+    private final Interval effectTimer = new Interval();
+    private int seeds;
+
+    public SurfaceGrid(){
+        Events.on(WorldLoadEvent.class, event -> reset());
+    }
+
+    @Remote
+    public static void onSurfaceUpdate(short rx, short ry, byte[] data){
+        surface.readRegion(rx, ry, data);
+    }
+
+    /** Clears all cells and resizes the grid to the world. */
+    public void reset(){
+        active.clear();
+        changed.clear();
+        changedRegions.clear();
+        int size = world.width() * world.height();
+
+        if(width * height != size){
+            liquids = new byte[size];
+            amounts = new float[size];
+            targets = new float[size];
+            accepting = new float[size];
+            ripples = new float[size];
+            generations = new byte[size];
+            fireTimes = new float[size];
+            fireLifetimes = new float[size];
+            flammabilities = new float[size];
+            synced = new int[size];
+        }else{
+            Arrays.fill(liquids, (byte)0);
+            Arrays.fill(amounts, 0f);
+            Arrays.fill(targets, 0f);
+            Arrays.fill(accepting, 0f);
+            Arrays.fill(ripples, 0f);
+            Arrays.fill(generations, (byte)0);
+            Arrays.fill(fireTimes, 0f);
+            Arrays.fill(fireLifetimes, 0f);
+            Arrays.fill(flammabilities, 0f);
+            Arrays.fill(synced, 0);
+        }
+
+        width = world.width();
+        height = world.height();
+    }
+
+    /** Deposits liquid on a tile, spreading from the source tile. */
+    public void deposit(Tile tile, Tile source, Liquid liquid, float amount, int generation){
+        if(tile == null || !valid(tile.x, tile.y)) return;
+
+        int cell = cell(tile.x, tile.y);
+        float x = (tile.worldx() + source.worldx()) / 2f, y = (tile.worldy() + source.worldy()) / 2f;
+
+        if(tile.floor().isLiquid && !canStayOn(liquid, tile.floor().liquidDrop)){
+            reactPuddle(tile.floor().liquidDrop, liquid, amount, tile, x, y);
+
+            if(generation == 0 && liquids[cell] != 0 && ripples[cell] <= Time.time() - 40f){
+                Effects.effect(Fx.ripple, tile.floor().liquidDrop.color, x, y);
+                ripples[cell] = Time.time();
+            }
+            return;
+        }
+
+        if(liquids[cell] == 0){
+            if(net.client()) return; //not clientside.
+
+            liquids[cell] = (byte)(liquid.id + 1);
+            amounts[cell] = amount;
+            accepting[cell] = 0f;
+            generations[cell] = (byte)generation;
+            activate(cell);
+        }else if(liquid(cell) == liquid){
+            accepting[cell] = Math.max(amount, accepting[cell]);
+
+            if(generation == 0 && ripples[cell] <= Time.time() - 40f && amounts[cell] >= maxLiquid / 2f){
+                Effects.effect(Fx.ripple, liquid.color, x, y);
+                ripples[cell] = Time.time();
+            }
+        }else{
+            amounts[cell] += reactPuddle(liquid(cell), liquid, amount, tile, tile.worldx(), tile.worldy());
+        }
+    }
+
+    /** Starts a fire on the tile. If it is already burning, refreshes the fire's lifetime. */
+    public void createFire(Tile tile){
+        if(net.client() || tile == null || !valid(tile.x, tile.y)) return; //not clientside.
+
+        int cell = cell(tile.x, tile.y);
+        if(fireLifetimes[cell] <= 0f){
+            flammabilities[cell] = flammability(tile, cell);
+            activate(cell);
+        }
+        fireLifetimes[cell] = baseLifetime;
+        fireTimes[cell] = 0f;
+    }
+
+    public boolean hasFire(int x, int y){
+        if(!valid(x, y)) return false;
+        int cell = cell(x, y);
+        return fireLifetimes[cell] > 0f && fireTimes[cell] < fireLifetimes[cell];
+    }
+
+    /** @return the liquid on this tile, or null if there is none. */
+    public @Nullable Liquid getLiquid(int x, int y){
+        if(!valid(x, y) || liquids[cell(x, y)] == 0) return null;
+        return liquid(cell(x, y));
+    }
+
+    /** @return the amount of liquid on this tile. */
+    public float getAmount(int x, int y){
+        return valid(x, y) ? amounts[cell(x, y)] : 0f;
+    }
+
+    /** Attempts to extinguish a fire by shortening its life. If there is no fire here, does nothing. */
+    public void extinguish(Tile tile, float intensity){
+        if(tile == null || !valid(tile.x, tile.y)) return;
+
+        int cell = cell(tile.x, tile.y);
+        if(fireLifetimes[cell] > 0f){
+            fireTimes[cell] += intensity * Time.delta();
+            if(fireTimes[cell] >= fireLifetimes[cell]){
+                Events.fire(Trigger.fireExtinguish);
+            }
+        }
+    }
+
+    /** Updates every active cell. */
+    public void update(){
+        if(active.size == 0) return;
+
+        boolean effects = effectTimer.get(effectInterval);
+
+        //cells can be activated and cleared while updating
+        stepping.clear();
+        IntSetIterator it = active.iterator();
+        while(it.hasNext){
+            stepping.add(it.next());
+        }
+
+        for(int i = 0; i < stepping.size; i++){
+            int cell = stepping.get(i);
+            Tile tile = world.rawTile(cell % width, cell / width);
+
+            if(liquids[cell] != 0){
+                updatePuddle(tile, cell, effects);
+            }
+
+            if(fireLifetimes[cell] > 0f){
+                updateFire(tile, cell);
+            }
+        }
+    }
+
+    /** Draws the liquid of every cell in view. */
+    public void draw(){
+        if(active.size == 0) return;
+
+        Core.camera.bounds(rect);
+        int minx = Math.max((int)(rect.x / tilesize) - 1, 0), miny = Math.max((int)(rect.y / tilesize) - 1, 0);
+        int maxx = Math.min((int)((rect.x + rect.width) / tilesize) + 1, width - 1), maxy = Math.min((int)((rect.y + rect.height) / tilesize) + 1, height - 1);
+
+        for(int y = miny; y <= maxy; y++){
+            for(int x = minx; x <= maxx; x++){
+                int cell = cell(x, y);
+                if(liquids[cell] != 0){
+                    drawPuddle(world.rawTile(x, y), cell);
+                }
+            }
+        }
+        Draw.color();
+    }
+
+    /** Sends every cell that has changed since the last sync to clients, grouped by region. */
+    public void sync(){
+        if(width == 0) return;
+
+        IntSetIterator it = active.iterator();
+        while(it.hasNext){
+            markSynced(it.next());
+        }
+
+        it = changed.iterator();
+        while(it.hasNext){
+            markSynced(it.next());
+        }
+        changed.clear();
+
+        int regionsWide = (width + regionSize - 1) / regionSize;
+        for(IntMap.Entry<IntArray> entry : changedRegions.entries()){
+            IntArray cells = entry.value;
+            if(cells.size == 0) continue;
+
+            byte[] data = new byte[cells.size * 4];
+            for(int i = 0; i < cells.size; i++){
+                int cell = cells.get(i), state = synced[cell];
+                int x = cell % width, y = cell / width;
+                data[i * 4] = (byte)((x % regionSize) + (y % regionSize) * regionSize);
+                data[i * 4 + 1] = (byte)(state >>> 16);
+                data[i * 4 + 2] = (byte)(state >>> 8);
+                data[i * 4 + 3] = (byte)state;
+            }
+            cells.clear();
+
+            Call.onSurfaceUpdate((short)(entry.key % regionsWide), (short)(entry.key / regionsWide), data);
+        }
+    }
+
+    /**
+     * Writes the state of every active cell for a joining player.
+     * Changes that have not been sent yet are sent first, so that the written state matches what other clients have.
+     */
+    public void write(DataOutput stream) throws IOException{
+        sync();
+
+        stream.writeInt(active.size);
+        IntSetIterator it = active.iterator();
+        while(it.hasNext){
+            int cell = it.next();
+            stream.writeInt(cell);
+            stream.writeInt(synced[cell]);
+        }
+    }
+
+    /** Reads the state written by {@link #write(DataOutput)}. */
+    public void read(DataInput stream) throws IOException{
+        int amount = stream.readInt();
+        for(int i = 0; i < amount; i++){
+            int cell = stream.readInt();
+            int state = stream.readInt();
+            if(cell >= 0 && cell < width * height){
+                apply(cell, state);
+                amounts[cell] = targets[cell];
+            }
+        }
+    }
+
+    /** @return records of every puddle, in the format they are saved in. */
+    public Array<Puddle> savePuddles(){
+        Array<Puddle> out = new Array<>();
+        IntSetIterator it = active.iterator();
+        while(it.hasNext){
+            int cell = it.next();
+            if(liquids[cell] != 0){
+                Tile tile = world.rawTile(cell % width, cell / width);
+                out.add(new Puddle(tile.pos(), tile.worldx(), tile.worldy(), liquid(cell), amounts[cell], generations[cell]));
+            }
+        }
+        return out;
+    }
+
+    /** @return records of every fire, in the format they are saved in. */
+    public Array<Fire> saveFires(){
+        Array<Fire> out = new Array<>();
+        IntSetIterator it = active.iterator();
+        while(it.hasNext){
+            int cell = it.next();
+            if(fireLifetimes[cell] > 0f){
+                out.add(new Fire(world.rawTile(cell % width, cell / width).pos(), fireLifetimes[cell], fireTimes[cell]));
+            }
+        }
+        return out;
+    }
+
+    /** Restores a saved puddle. */
+    void loadPuddle(int pos, Liquid liquid, float amount, byte generation){
+        Tile tile = world.tile(pos);
+        if(tile == null || liquid == null) return;
+
+        int cell = cell(tile.x, tile.y);
+        liquids[cell] = (byte)(liquid.id + 1);
+        amounts[cell] = targets[cell] = amount;
+        generations[cell] = generation;
+        activate(cell);
+    }
+
+    /** Restores a saved fire. */
+    void loadFire(int pos, float lifetime, float time){
+        Tile tile = world.tile(pos);
+        if(tile == null || lifetime <= 0f) return;
+
+        int cell = cell(tile.x, tile.y);
+        fireLifetimes[cell] = lifetime;
+        fireTimes[cell] = time;
+        flammabilities[cell] = flammability(tile, cell);
+        activate(cell);
+    }
+
+    private void updatePuddle(Tile tile, int cell, boolean effects){
+        Liquid liquid = liquid(cell);
+
+        //no simulation happens clientside
+        if(net.client()){
+            amounts[cell] = Mathf.lerpDelta(amounts[cell], targets[cell], 0.15f);
+        }else{
+            float addSpeed = accepting[cell] > 0 ? 3f : 0f;
+
+            amounts[cell] -= Time.delta() * (1f - liquid.viscosity) / (5f + addSpeed);
+
+            amounts[cell] += accepting[cell];
+            accepting[cell] = 0f;
+
+            if(amounts[cell] >= maxLiquid / 1.5f && generations[cell] < maxGeneration){
+                float deposited = Math.min((amounts[cell] - maxLiquid / 1.5f) / 4f, 0.3f) * Time.delta();
+                for(Point2 point : Geometry.d4){
+                    Tile other = world.tile(tile.x + point.x, tile.y + point.y);
+                    if(other != null && other.block() == Blocks.air){
+                        deposit(other, tile, liquid, deposited, generations[cell] + 1);
+                        amounts[cell] -= deposited / 2f; //tweak to speed up/slow down puddle propagation
+                    }
+                }
+            }
+
+            amounts[cell] = Mathf.clamp(amounts[cell], 0, maxLiquid);
+
+            if(amounts[cell] <= 0f){
+                clearLiquid(cell);
+                return;
+            }
+        }
+
+        //effects-only code
+        if(effects && amounts[cell] >= maxLiquid / 2f){
+            float x = tile.worldx(), y = tile.worldy();
+            Units.nearby(rect.setSize(Mathf.clamp(amounts[cell] / (maxLiquid / 1.5f)) * 10f).setCenter(x, y), unit -> {
+                if(unit.isFlying()) return;
+
+                unit.hitbox(rect2);
+                if(!rect.overlaps(rect2)) return;
+
+                unit.applyEffect(liquid.effect, 60 * 2);
+
+                if(unit.velocity().len() > 0.1){
+                    Effects.effect(Fx.ripple, liquid.color, unit.x, unit.y);
+                }
+            });
+
+            if(liquid.temperature > 0.7f && (tile.link().entity != null) && Mathf.chance(0.3 * Time.delta())){
+                createFire(tile);
+            }
+        }
+    }
+
+    private void updateFire(Tile tile, int cell){
+        float x = tile.worldx(), y = tile.worldy();
+
+        if(Mathf.chance(0.1 * Time.delta())){
+            Effects.effect(Fx.fire, x + Mathf.range(4f), y + Mathf.range(4f));
+        }
+
+        if(Mathf.chance(0.05 * Time.delta())){
+            Effects.effect(Fx.fireSmoke, x + Mathf.range(4f), y + Mathf.range(4f));
+        }
+
+        if(Mathf.chance(0.001 * Time.delta())){
+            Sounds.fire.at(tile);
+        }
+
+        if(net.client()){
+            return;
+        }
+
+        fireTimes[cell] = Mathf.clamp(fireTimes[cell] + Time.delta(), 0, fireLifetimes[cell]);
+
+        if(fireTimes[cell] >= fireLifetimes[cell]){
+            clearFire(cell);
+            return;
+        }
+
+        TileEntity entity = tile.link().entity;
+        boolean damage = entity != null;
+        float flammability = flammabilities[cell];
+
+        if(!damage && flammability <= 0){
+            fireTimes[cell] += Time.delta() * 8;
+        }
+
+        if(damage){
+            fireLifetimes[cell] += Mathf.clamp(flammability / 8f, 0f, 0.6f) * Time.delta();
+        }
+
+        if(flammability > 1f && Mathf.chance(spreadChance * Time.delta() * Mathf.clamp(flammability / 5f, 0.3f, 2f))){
+            Point2 p = Geometry.d4[Mathf.random(3)];
+            createFire(world.tile(tile.x + p.x, tile.y + p.y));
+
+            if(Mathf.chance(fireballChance * Time.delta() * Mathf.clamp(flammability / 10f))){
+                Call.createBullet(Bullets.fireball, x, y, Mathf.random(360f));
+            }
+        }
+
+        if(Mathf.chance(0.1 * Time.delta())){
+            flammabilities[cell] = flammability(tile, cell);
+
+            if(damage){
+                entity.damage(0.4f);
+            }
+            Damage.damageUnits(null, x, y, tilesize, 3f, burnable, burn);
+        }
+    }
+
+    private void drawPuddle(Tile tile, int cell){
+        seeds = cell;
+        boolean onLiquid = tile.floor().isLiquid;
+        float f = Mathf.clamp(amounts[cell] / (maxLiquid / 1.5f));
+        float smag = onLiquid ? 0.8f : 0f;
+        float sscl = 20f;
+        float x = tile.worldx(), y = tile.worldy();
+
+        Draw.color(tmp.set(liquid(cell).color).shiftValue(-0.05f));
+        Fill.circle(x + Mathf.sin(Time.time() + seeds * 532, sscl, smag), y + Mathf.sin(Time.time() + seeds * 53, sscl, smag), f * 8f);
+        Angles.randLenVectors(cell, 3, f * 6f, (ex, ey) -> {
+            Fill.circle(x + ex + Mathf.sin(Time.time() + seeds * 532, sscl, smag),
+            y + ey + Mathf.sin(Time.time() + seeds * 53, sscl, smag), f * 5f);
+            seeds++;
+        });
+    }
+
+    private void readRegion(int rx, int ry, byte[] data){
+        for(int i = 0; i + 3 < data.length; i += 4){
+            int local = data[i] & 0xff;
+            int x = rx * regionSize + local % regionSize, y = ry * regionSize + local / regionSize;
+            if(!valid(x, y)) continue;
+
+            apply(cell(x, y), ((data[i + 1] & 0xff) << 16) | ((data[i + 2] & 0xff) << 8) | (data[i + 3] & 0xff));
+        }
+    }
+
+    /** Applies a synced cell state on the client. */
+    private void apply(int cell, int state){
+        int liquid = (state >>> 16) & 0xff;
+
+        if(liquid == 0){
+            clearLiquid(cell);
+        }else{
+            if(liquids[cell] == 0){
+                amounts[cell] = 0f;
+            }
+            liquids[cell] = (byte)liquid;
+            targets[cell] = ((state >>> 8) & 0xff) / 255f * maxLiquid;
+        }
+
+        if((state & 0xff) != 0){
+            fireLifetimes[cell] = baseLifetime;
+            fireTimes[cell] = 0f;
+        }else{
+            clearFire(cell);
+        }
+
+        if(liquids[cell] != 0 || fireLifetimes[cell] > 0f){
+            active.add(cell);
+        }
+    }
+
+    /** Packs the liquid, amount and fire of a cell into its synced form. */
+    private int state(int cell){
+        int amount = liquids[cell] == 0 ? 0 : Mathf.clamp((int)(amounts[cell] / maxLiquid * 255), 1, 255);
+        return ((liquids[cell] & 0xff) << 16) | (amount << 8) | (fireLifetimes[cell] > 0f ? 1 : 0);
+    }
+
+    private void markSynced(int cell){
+        int state = state(cell);
+        if(state == synced[cell]) return;
+
+        synced[cell] = state;
+        int region = (cell % width) / regionSize + (cell / width) / regionSize * ((width + regionSize - 1) / regionSize);
+        IntArray cells = changedRegions.get(region);
+        if(cells == null){
+            changedRegions.put(region, cells = new IntArray());
+        }
+        cells.add(cell);
+    }
+
+    private void activate(int cell){
+        active.add(cell);
+        changed.add(cell);
+    }
+
+    private void clearLiquid(int cell){
+        liquids[cell] = 0;
+        amounts[cell] = targets[cell] = accepting[cell] = 0f;
+        generations[cell] = 0;
+        deactivate(cell);
+    }
+
+    private void clearFire(int cell){
+        fireLifetimes[cell] = fireTimes[cell] = 0f;
+        deactivate(cell);
+    }
+
+    private void deactivate(int cell){
+        if(liquids[cell] == 0 && fireLifetimes[cell] <= 0f && active.remove(cell)){
+            changed.add(cell);
+        }
+    }
+
+    private float flammability(Tile tile, int cell){
+        float puddle = liquids[cell] == 0 ? 0f : liquid(cell).flammability * amounts[cell] / 3f;
+        return tile.block().getFlammability(tile) + puddle;
+    }
+
+    private Liquid liquid(int cell){
+        return content.liquid((liquids[cell] & 0xff) - 1);
+    }
+
+    private boolean valid(int x, int y){
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    private int cell(int x, int y){
+        return x + y * width;
+    }
+
+    /**
+     * Returns whether the first liquid can 'stay' on the second one.
+     * Currently, the only place where this can happen is oil on water.
+     */
+    private static boolean canStayOn(Liquid liquid, Liquid other){
+        return liquid == Liquids.oil && other == Liquids.water;
+    }
+
+    /** Reacts two liquids together at a location. */
+    private static float reactPuddle(Liquid dest, Liquid liquid, float amount, Tile tile, float x, float y){
+        if((dest.flammability > 0.3f && liquid.temperature > 0.7f) ||
+        (liquid.flammability > 0.3f && dest.temperature > 0.7f)){ //flammable liquid + hot liquid
+            Fire.create(tile);
+            if(Mathf.chance(0.006 * amount)){
+                Call.createBullet(Bullets.fireball, x, y, Mathf.random(360f));
+            }
+        }else if(dest.temperature > 0.7f && liquid.temperature < 0.55f){ //cold liquid poured onto hot puddle
+            if(Mathf.chance(0.5f * amount)){
+                Effects.effect(Fx.steam, x, y);
+            }
+            return -0.1f * amount;
+        }else if(liquid.temperature > 0.7f && dest.temperature < 0.55f){ //hot liquid poured onto cold puddle
+            if(Mathf.chance(0.8f * amount)){
+                Effects.effect(Fx.steam, x, y);
+            }
+            return -0.4f * amount;
+        }
+        return 0f;
+    }
+}
@@ -0,0 +1,29 @@
+package io.anuke.mindustry.entities.traits;
+
+/**
+ * An entity whose update is split into phases, so that the expensive read-only part can run on several threads.
+ * When a group is updated in parallel, every entity runs {@link #updateBegin()}, then all of them run {@link #updateParallel()}
+ * concurrently, then every entity runs {@link #updateApply()} in group order.
+ */
+public interface ParallelUpdateTrait extends Entity{
+
+    /** Runs on the logic thread before the parallel phase. */
+    default void updateBegin(){
+    }
+
+    /**
+     * Runs on a worker thread, concurrently with other entities of the same group.
+     * May only write to fields of this entity, and may only read shared state - no events, removals, damage or static scratch objects.
+     */
+    void updateParallel();
+
+    /** Runs on the logic thread after every entity of the group has finished its parallel phase. Applies all side effects. */
+    void updateApply();
+
+    @Override
+    default void update(){
+        updateBegin();
+        updateParallel();
+        updateApply();
+    }
+}
@@ -15,13 +15,15 @@ import io.anuke.mindustry.world.*;
 
 import static io.anuke.mindustry.Vars.*;
 
-public class Bullet extends SolidEntity implements DamageTrait, ScaleTrait, Poolable, DrawTrait, VelocityTrait, TimeTrait, TeamTrait, AbsorbTrait{
+public class Bullet extends SolidEntity implements DamageTrait, ScaleTrait, Poolable, DrawTrait, VelocityTrait, TimeTrait, TeamTrait, AbsorbTrait, ParallelUpdateTrait{
     public Interval timer = new Interval(3);
 
     private float lifeScl;
     private Team team;
     private Object data;
     private boolean supressCollision, supressOnce, initialized, deflected;
+    /** Tile hit during the last parallel update phase, applied afterwards. */
+    private transient Tile hitTile;
 
     protected BulletType type;
     protected Entity owner;
@@ -181,9 +183,12 @@ public class Bullet extends SolidEntity implements DamageTrait, ScaleTrait, Pool
     }
 
     @Override
-    public void update(){
+    public void updateBegin(){
         type.update(this);
+    }
 
+    @Override
+    public void updateParallel(){
         x += velocity.x * Time.delta();
         y += velocity.y * Time.delta();
 
@@ -192,10 +197,7 @@ public class Bullet extends SolidEntity implements DamageTrait, ScaleTrait, Pool
         time += Time.delta() * 1f / (lifeScl);
         time = Mathf.clamp(time, 0, type.lifetime);
 
-        if(time >= type.lifetime){
-            if(!supressCollision) type.despawned(this);
-            remove();
-        }
+        hitTile = null;
 
         if(type.hitTiles && collidesTiles() && !supressCollision && initialized){
             world.raycastEach(world.toTile(lastPosition().x), world.toTile(lastPosition().y), world.toTile(x), world.toTile(y), (x, y) -> {
@@ -204,21 +206,37 @@ public class Bullet extends SolidEntity implements DamageTrait, ScaleTrait, Pool
                 if(tile == null) return false;
 
                 if(tile.entity != null && tile.entity.collide(this) && type.collides(this, tile) && !tile.entity.isDead() && (type.collidesTeam || tile.getTeam() != team)){
-                    if(tile.getTeam() != team){
-                        tile.entity.collision(this);
-                    }
-
-                    if(!supressCollision){
-                        type.hitTile(this, tile);
-                        remove();
-                    }
-
+                    hitTile = tile;
                     return true;
                 }
 
                 return false;
             });
         }
+    }
+
+    @Override
+    public void updateApply(){
+        if(time >= type.lifetime){
+            if(!supressCollision) type.despawned(this);
+            remove();
+        }
+
+        //the tile may have been destroyed by another bullet since it was found
+        if(hitTile != null && !supressCollision && hitTile.entity != null && !hitTile.entity.isDead()){
+            Tile tile = hitTile;
+
+            if(tile.getTeam() != team){
+                tile.entity.collision(this);
+            }
+
+            if(!supressCollision){
+                type.hitTile(this, tile);
+                remove();
+            }
+        }
+
+        hitTile = null;
 
         if(supressOnce){
             supressCollision = false;
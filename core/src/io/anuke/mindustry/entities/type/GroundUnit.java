@@ -1,11 +1,12 @@
 package io.anuke.mindustry.entities.type;
 
+import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.collection.*;
 import io.anuke.arc.graphics.*;
 import io.anuke.arc.graphics.g2d.*;
 import io.anuke.arc.math.*;
 import io.anuke.arc.math.geom.*;
 import io.anuke.arc.util.*;
-import io.anuke.mindustry.*;
 import io.anuke.mindustry.entities.*;
 import io.anuke.mindustry.entities.bullet.*;
 import io.anuke.mindustry.entities.units.*;
@@ -23,6 +24,13 @@ public abstract class GroundUnit extends BaseUnit{
     protected float stuckTime;
     protected float baseRotation;
 
+    /** Waypoints of the path this unit follows back to its core, and the tiles of the step it is currently walking. */
+    protected final IntArray waypoints = new IntArray(), steps = new IntArray();
+    protected int waypoint, step;
+    protected float pathTime;
+    /** Block the current path leads to. */
+    protected @Nullable Tile pathGoal;
+
     public final UnitState
 
     attack = new UnitState(){
@@ -234,24 +242,66 @@ public abstract class GroundUnit extends BaseUnit{
     }
 
     protected void moveAwayFromCore(){
-        Team enemy = null;
-        for(Team team : Vars.state.teams.enemiesOf(team)){
-            if(Vars.state.teams.isActive(team)){
-                enemy = team;
-                break;
-            }
-        }
-
-        if(enemy == null) return;
-
         Tile tile = world.tileWorld(x, y);
-        if(tile == null) return;
-        Tile targetTile = pathfinder.getTargetTile(enemy, tile);
         TileEntity core = getClosestCore();
 
-        if(tile == targetTile || core == null || dst(core) < 120f) return;
+        if(tile == null || core == null || dst(core) < 120f) return;
+
+        Tile targetTile = pathTowards(tile, core.tile);
+
+        if(targetTile == null) return;
 
         velocity.add(vec.trns(angleTo(targetTile), type.speed * Time.delta()));
         rotation = Mathf.slerpDelta(rotation, baseRotation, type.rotatespeed);
     }
+
+    /**
+     * @return the next tile to walk to on the way to this block, following a path over the sector graph; null if there is none.
+     * The path ends at the passable tile next to the block that was closest to this unit when the path was searched.
+     */
+    protected @Nullable Tile pathTowards(Tile tile, Tile goal){
+        pathTime += Time.delta();
+
+        //search again when the goal changes, or after being stuck for a while, as the path may have been blocked since
+        if(goal != pathGoal || (stuckTime > 30f && pathTime > 60f)){
+            pathGoal = goal;
+            pathTime = 0f;
+            waypoint = step = 0;
+            steps.clear();
+            Tile end = approach(goal);
+            if(end == null || !pathfinder.findPath(tile, end, waypoints)){
+                waypoints.clear();
+            }
+        }
+
+        while(true){
+            if(step < steps.size){
+                Tile next = world.tile(steps.get(step));
+                if(next != null && dst(next) > tilesize * 0.75f) return next;
+                step++;
+            }else if(waypoint + 1 < waypoints.size){
+                //steps are only refined once the unit gets to them
+                if(!pathfinder.refinePath(waypoints.get(waypoint), waypoints.get(waypoint + 1), steps)){
+                    waypoints.clear();
+                    return null;
+                }
+                waypoint++;
+                step = 0;
+            }else{
+                return null;
+            }
+        }
+    }
+
+    /** @return the passable tile next to this block that is closest to this unit, or null if there is none. */
+    private @Nullable Tile approach(Tile block){
+        Tile result = null;
+        for(Point2 edge : Edges.getEdges(block.block().size)){
+            Tile other = world.tile(block.x + edge.x, block.y + edge.y);
+            if(other != null && !other.solid() && other.floor().drownTime <= 0f && (result == null || dst(other) < dst(result))){
+                result = other;
+            }
+        }
+        return result;
+    }
 }
@@ -33,7 +33,6 @@ import java.io.*;
 import static io.anuke.mindustry.Vars.*;
 
 public class Player extends Unit implements BuilderMinerTrait, ShooterTrait{
-    public static final int timerSync = 2;
     public static final int timerAbility = 3;
     public static final int timerTransfer = 4;
     private static final int timerShootLeft = 0;
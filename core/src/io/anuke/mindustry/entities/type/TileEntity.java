@@ -1,6 +1,7 @@
 package io.anuke.mindustry.entities.type;
 
 import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.Core;
 import io.anuke.arc.Events;
 import io.anuke.arc.collection.Array;
 import io.anuke.arc.collection.ObjectSet;
@@ -23,6 +24,8 @@ import static io.anuke.mindustry.Vars.*;
 public class TileEntity extends BaseEntity implements TargetTrait, HealthTrait{
     public static final float timeToSleep = 60f * 4; //4 seconds to fall asleep
     private static final ObjectSet<Tile> tmpTiles = new ObjectSet<>();
+    /** Conditions that wake up an entity sleeping through {@link #sleepUntil(int)}. Proximity changes always wake entities up. */
+    public static final int wakeItems = 1, wakeLiquids = 2, wakePower = 4;
     /** This value is only used for debugging. */
     public static int sleepingEntities = 0;
 
@@ -31,6 +34,8 @@ public class TileEntity extends BaseEntity implements TargetTrait, HealthTrait{
     public Interval timer;
     public float health;
     public float timeScale = 1f, timeScaleDuration;
+    /** Frame in which the saved state of this entity last changed. Changes to its modules are tracked by the modules. */
+    public long lastChanged = -1;
 
     public PowerModule power;
     public ItemModule items;
@@ -42,12 +47,17 @@ public class TileEntity extends BaseEntity implements TargetTrait, HealthTrait{
     private boolean dead = false;
     private boolean sleeping;
     private float sleepTime;
+    /** Conditions this entity is waiting on, or 0 if it is awake or sleeping on a timer. */
+    private int wakeConditions;
+    /** Amount of updates in a row in which {@link #sleepUntil(int)} was called, with no wake condition occurring in between. */
+    private int idleUpdates;
     private @Nullable SoundLoop sound;
 
     @Remote(called = Loc.server, unreliable = true)
     public static void onTileDamage(Tile tile, float health){
         if(tile.entity != null){
             tile.entity.health = health;
+            tile.entity.markChanged();
 
             if(tile.entity.damaged()){
                 indexer.notifyTileDamaged(tile.entity);
@@ -96,9 +106,48 @@ public class TileEntity extends BaseEntity implements TargetTrait, HealthTrait{
         }
     }
 
+    /**
+     * Call when this entity can't do anything until one of the conditions occurs, such as an item arriving.
+     * Unlike {@link #sleep()}, the entity leaves the update loop right away, as long as it was idle in the previous update too.
+     * It is woken up by {@link #wake(int)} with a matching condition, or any call to {@link #noSleep()}.
+     * @param conditions a mask of {@link #wakeItems}, {@link #wakeLiquids} and {@link #wakePower}
+     */
+    public void sleepUntil(int conditions){
+        //consumers are only updated after the block, so the update after waking up still sees stale state
+        if(++idleUpdates < 2) return;
+
+        wakeConditions = conditions;
+        if(!sleeping){
+            remove();
+            sleeping = true;
+            sleepingEntities++;
+        }
+    }
+
+    /** Wakes this entity up if it is sleeping until this condition occurs. */
+    public void wake(int condition){
+        if(!sleeping){
+            //the next update may still see the state from before this condition, so it can't count as idle
+            idleUpdates = 0;
+        }else if((wakeConditions & condition) != 0){
+            noSleep();
+        }
+    }
+
+    /** Stops counting this entity as sleeping, without adding it back to the update loop. Call when it is removed from its tile. */
+    public void clearSleep(){
+        wakeConditions = 0;
+        if(sleeping){
+            sleeping = false;
+            sleepingEntities--;
+        }
+    }
+
     /** Call when this entity is updating. This wakes it up. */
     public void noSleep(){
         sleepTime = 0f;
+        idleUpdates = 0;
+        wakeConditions = 0;
         if(sleeping){
             add();
             sleeping = false;
@@ -110,6 +159,22 @@ public class TileEntity extends BaseEntity implements TargetTrait, HealthTrait{
         return sleeping;
     }
 
+    /**
+     * Call after modifying state that this entity writes, other than its modules. Continuous values such as progress
+     * may go unmarked, as joining players only see them slightly out of date.
+     */
+    public void markChanged(){
+        lastChanged = Core.graphics.getFrameId();
+    }
+
+    /** @return whether this entity or any of its modules may have changed in or after this frame. */
+    public boolean changedSince(long frame){
+        return lastChanged >= frame
+            || (items != null && items.lastChanged >= frame)
+            || (liquids != null && liquids.lastChanged >= frame)
+            || (power != null && power.lastChanged >= frame);
+    }
+
     public boolean isDead(){
         return dead || tile.entity != this;
     }
@@ -240,6 +305,7 @@ public class TileEntity extends BaseEntity implements TargetTrait, HealthTrait{
     @Override
     public void health(float health){
         this.health = health;
+        markChanged();
     }
 
     @Override
@@ -301,7 +367,10 @@ public class TileEntity extends BaseEntity implements TargetTrait, HealthTrait{
         }
 
         Block previous = block;
+        int idle = idleUpdates;
         block.update(tile);
+        //only consecutive idle updates count towards sleeping
+        if(idleUpdates == idle) idleUpdates = 0;
         if(block == previous && cons != null){
             cons.update();
         }
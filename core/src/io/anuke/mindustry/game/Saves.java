@@ -58,6 +58,8 @@ public class Saves{
                 nextSlot = Math.max(index + 1, nextSlot);
             }
         }
+
+        SaveIO.metaIndex().flush();
     }
 
     public SaveSlot getCurrent(){
@@ -82,11 +84,11 @@ public class Saves{
 
                 Time.runTask(2f, () -> {
                     try{
-                        current.save();
+                        current.saveAsync(() -> saving = false);
                     }catch(Exception e){
                         e.printStackTrace();
+                        saving = false;
                     }
-                    saving = false;
                 });
 
                 time = 0;
@@ -191,6 +193,7 @@ public class Saves{
 
             SaveIO.saveToSlot(index);
             meta = SaveIO.getMeta(index);
+            SaveIO.metaIndex().flush();
             if(!state.is(State.menu)){
                 current = this;
             }
@@ -199,6 +202,25 @@ public class Saves{
             savePreview();
         }
 
+        /**
+         * Saves without blocking the game: the world is captured immediately, and compressed and written in the background.
+         * @param done called on the main thread once the save is written.
+         */
+        public void saveAsync(Runnable done){
+            SaveIO.saveToSlotAsync(index, () -> {
+                if(SaveIO.isSaveValid(index)){
+                    meta = SaveIO.getMeta(index);
+                    SaveIO.metaIndex().flush();
+                }
+                if(!state.is(State.menu)){
+                    current = this;
+                }
+
+                savePreview();
+                done.run();
+            });
+        }
+
         private void savePreview(){
             if(Core.assets.isLoaded(loadPreviewFile().path())){
                 Core.assets.unload(loadPreviewFile().path());
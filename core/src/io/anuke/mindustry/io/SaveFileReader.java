@@ -86,6 +86,15 @@ public abstract class SaveFileReader{
         }
     }
 
+    /** @return the bytes written by the runner, using a buffer local to this call. */
+    protected static byte[] encode(IORunner<DataOutput> runner) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream output = new DataOutputStream(bytes)){
+            runner.accept(output);
+        }
+        return bytes.toByteArray();
+    }
+
     public void writeStringMap(DataOutput stream, ObjectMap<String, String> map) throws IOException{
         stream.writeShort(map.size);
         for(Entry<String, String> entry : map.entries()){
@@ -1,12 +1,16 @@
 package io.anuke.mindustry.io;
 
+import io.anuke.arc.*;
 import io.anuke.arc.collection.*;
 import io.anuke.arc.files.FileHandle;
+import io.anuke.arc.util.Log;
+import io.anuke.arc.util.async.AsyncExecutor;
 import io.anuke.arc.util.io.CounterInputStream;
-import io.anuke.arc.util.io.FastDeflaterOutputStream;
 import io.anuke.mindustry.Vars;
+import io.anuke.mindustry.io.SaveVersion.SaveState;
 import io.anuke.mindustry.io.versions.Save1;
 import io.anuke.mindustry.io.versions.Save2;
+import io.anuke.mindustry.io.versions.Save3;
 import io.anuke.mindustry.world.WorldContext;
 
 import java.io.*;
@@ -19,7 +23,12 @@ public class SaveIO{
     /** Format header. This is the string 'MSAV' in ASCII. */
     public static final byte[] header = {77, 83, 65, 86};
     public static final IntMap<SaveVersion> versions = new IntMap<>();
-    public static final Array<SaveVersion> versionArray = Array.with(new Save1(), new Save2());
+    public static final Array<SaveVersion> versionArray = Array.with(new Save1(), new Save2(), new Save3());
+    /** Encodes, compresses and writes saves in the background. Single-threaded, so writes happen in order. */
+    private static final AsyncExecutor writer = new AsyncExecutor(1);
+    private static SaveMetaIndex metaIndex;
+    /** Locks of each slot, held while its files are read or replaced, so that slots don't wait on each other. */
+    private static final IntMap<Object> slotLocks = new IntMap<>();
 
     static{
         for(SaveVersion version : versionArray){
@@ -36,27 +45,103 @@ public class SaveIO{
     }
 
     public static void saveToSlot(int slot){
-        FileHandle file = fileFor(slot);
-        boolean exists = file.exists();
-        if(exists) file.moveTo(backupFileFor(file));
+        synchronized(lock(slot)){
+            FileHandle file = fileFor(slot);
+            boolean exists = file.exists();
+            if(exists) file.moveTo(backupFileFor(file));
+            try{
+                write(fileFor(slot));
+            }catch(Exception e){
+                if(exists) backupFileFor(file).moveTo(file);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Captures the current state on this thread, then encodes, compresses and writes it to a slot in the background.
+     * The existing file is kept as a backup like in {@link #saveToSlot(int)}.
+     * @param done called on the main thread once the save is written, or has failed.
+     */
+    public static void saveToSlotAsync(int slot, Runnable done){
+        SaveState state = capture();
+
+        writer.submit(() -> {
+            try{
+                saveToSlot(slot, state);
+            }catch(Throwable e){
+                Log.err(e);
+            }
+            Core.app.post(done);
+            return null;
+        });
+    }
+
+    /** Captures the current state with {@link SaveVersion#capture(StringMap)}. Must be called on the main thread. */
+    public static SaveState capture(){
         try{
-            write(fileFor(slot));
-        }catch(Exception e){
-            if(exists) backupFileFor(file).moveTo(file);
+            return getVersion().capture(new StringMap());
+        }catch(IOException e){
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Encodes and compresses state created by {@link #capture()}, then writes it to a slot. Can be called from any thread.
+     * The slot is only locked while its file is replaced, not while encoding.
+     */
+    public static void saveToSlot(int slot, SaveState state){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 * 64);
+        try(DataOutputStream stream = new DataOutputStream(bytes)){
+            stream.write(header);
+            stream.writeInt(getVersion().version);
+            getVersion().write(stream, state);
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
+
+        synchronized(lock(slot)){
+            FileHandle file = fileFor(slot);
+            boolean exists = file.exists();
+            if(exists) file.moveTo(backupFileFor(file));
+            try(OutputStream stream = file.write(false, bufferSize)){
+                bytes.writeTo(stream);
+            }catch(Exception e){
+                if(exists) backupFileFor(file).moveTo(file);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     public static void loadFromSlot(int slot) throws SaveException{
-        load(fileFor(slot));
+        synchronized(lock(slot)){
+            load(fileFor(slot));
+        }
     }
 
     public static DataInputStream getSlotStream(int slot){
-        return new DataInputStream(new InflaterInputStream(fileFor(slot).read(bufferSize)));
+        return new DataInputStream(open(fileFor(slot).read(bufferSize)));
     }
 
     public static DataInputStream getBackupSlotStream(int slot){
-        return new DataInputStream(new InflaterInputStream(backupFileFor(fileFor(slot)).read(bufferSize)));
+        return new DataInputStream(open(backupFileFor(fileFor(slot)).read(bufferSize)));
+    }
+
+    /**
+     * @return the save data of this stream. Saves before version 3 are deflated as a whole and are inflated here;
+     * later versions start with an uncompressed header and compress their regions themselves.
+     */
+    public static InputStream open(InputStream is){
+        try{
+            if(!is.markSupported()) is = new BufferedInputStream(is);
+            is.mark(header.length);
+            byte[] bytes = new byte[header.length];
+            new DataInputStream(is).readFully(bytes);
+            is.reset();
+            return Arrays.equals(bytes, header) ? is : new InflaterInputStream(is);
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
     }
 
     public static boolean isSaveValid(int slot){
@@ -70,7 +155,7 @@ public class SaveIO{
 
     public static boolean isSaveValid(FileHandle file){
         try{
-            return isSaveValid(new DataInputStream(new InflaterInputStream(file.read(bufferSize))));
+            return isSaveValid(new DataInputStream(open(file.read(bufferSize))));
         }catch(Exception e){
             return false;
         }
@@ -87,10 +172,38 @@ public class SaveIO{
     }
 
     public static SaveMeta getMeta(int slot){
-        try{
-            return getMeta(getSlotStream(slot));
-        }catch(Exception e){
-            return getMeta(getBackupSlotStream(slot));
+        synchronized(lock(slot)){
+            FileHandle file = fileFor(slot);
+            SaveMeta meta = metaIndex().get(file);
+            if(meta != null) return meta;
+
+            try(DataInputStream stream = getSlotStream(slot)){
+                readHeader(stream);
+                int version = stream.readInt();
+                StringMap tags = versions.get(version).getMetaTags(stream);
+                metaIndex().put(file, version, tags);
+                return versions.get(version).getMeta(tags);
+            }catch(Exception e){
+                return getMeta(getBackupSlotStream(slot));
+            }
+        }
+    }
+
+    /** @return index of the meta of every save slot. Call {@link SaveMetaIndex#flush()} after saves were read or written to persist it. */
+    public static synchronized SaveMetaIndex metaIndex(){
+        if(metaIndex == null){
+            metaIndex = new SaveMetaIndex(saveDirectory.child("meta-index.dat"));
+        }
+        return metaIndex;
+    }
+
+    private static Object lock(int slot){
+        synchronized(slotLocks){
+            Object lock = slotLocks.get(slot);
+            if(lock == null){
+                slotLocks.put(slot, lock = new Object());
+            }
+            return lock;
         }
     }
 
@@ -116,7 +229,7 @@ public class SaveIO{
     }
 
     public static void write(FileHandle file, StringMap tags){
-        write(new FastDeflaterOutputStream(file.write(false, bufferSize)), tags);
+        write(file.write(false, bufferSize), tags);
     }
 
     public static void write(FileHandle file){
@@ -144,21 +257,21 @@ public class SaveIO{
     public static void load(FileHandle file, WorldContext context) throws SaveException{
         try{
             //try and load; if any exception at all occurs
-            load(new InflaterInputStream(file.read(bufferSize)), context);
+            load(file.read(bufferSize), context);
         }catch(SaveException e){
             e.printStackTrace();
             FileHandle backup = file.sibling(file.name() + "-backup." + file.extension());
             if(backup.exists()){
-                load(new InflaterInputStream(backup.read(bufferSize)), context);
+                load(backup.read(bufferSize), context);
             }else{
                 throw new SaveException(e.getCause());
             }
         }
     }
 
-    /** Loads from a deflated (!) input stream.*/
+    /** Loads from a save file stream, which is inflated if needed. See {@link #open(InputStream)}. */
     public static void load(InputStream is, WorldContext context) throws SaveException{
-        try(CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
+        try(CounterInputStream counter = new CounterInputStream(open(is)); DataInputStream stream = new DataInputStream(counter)){
             logic.reset();
             readHeader(stream);
             int version = stream.readInt();
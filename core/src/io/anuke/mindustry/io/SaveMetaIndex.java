@@ -0,0 +1,108 @@
+package io.anuke.mindustry.io;
+
+import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.collection.*;
+import io.anuke.arc.files.*;
+import io.anuke.arc.util.*;
+
+import java.io.*;
+
+/**
+ * Persistent index of the meta tags of save files in one directory, so that listing saves doesn't require opening and inflating each one.
+ * Entries are keyed by file name and are invalid once the file's modification time or length changes.
+ */
+public class SaveMetaIndex{
+    private static final int indexVersion = 1;
+
+    private final FileHandle file;
+    private final ObjectMap<String, IndexEntry> entries = new ObjectMap<>();
+    private boolean loaded, dirty;
+
+    public SaveMetaIndex(FileHandle file){
+        this.file = file;
+    }
+
+    /** @return the cached meta of this save file, or null if it isn't indexed or has changed since. */
+    public synchronized @Nullable SaveMeta get(FileHandle save){
+        load();
+        IndexEntry entry = entries.get(save.name());
+        if(entry == null || entry.modified != save.lastModified() || entry.length != save.length()){
+            return null;
+        }
+
+        SaveVersion version = SaveIO.getSaveWriter(entry.version);
+        return version == null ? null : version.getMeta(entry.tags);
+    }
+
+    /** Indexes the meta tags of a save file. Not written to disk until {@link #flush()} is called. */
+    public synchronized void put(FileHandle save, int version, StringMap tags){
+        load();
+        IndexEntry entry = new IndexEntry();
+        entry.modified = save.lastModified();
+        entry.length = save.length();
+        entry.version = version;
+        entry.tags = tags;
+        entries.put(save.name(), entry);
+        dirty = true;
+    }
+
+    /** Writes the index to disk if it has changed, dropping entries of files that no longer exist. */
+    public synchronized void flush(){
+        if(!dirty) return;
+
+        try(DataOutputStream stream = new DataOutputStream(file.write(false, 8192))){
+            for(String name : entries.keys().toArray()){
+                if(!file.sibling(name).exists()){
+                    entries.remove(name);
+                }
+            }
+
+            stream.writeInt(indexVersion);
+            stream.writeInt(entries.size);
+            for(ObjectMap.Entry<String, IndexEntry> e : entries){
+                stream.writeUTF(e.key);
+                stream.writeLong(e.value.modified);
+                stream.writeLong(e.value.length);
+                stream.writeInt(e.value.version);
+                SaveIO.getSaveWriter().writeStringMap(stream, e.value.tags);
+            }
+            dirty = false;
+        }catch(Exception e){
+            Log.err("Failed to write save meta index.");
+            Log.err(e);
+        }
+    }
+
+    private void load(){
+        if(loaded) return;
+        loaded = true;
+
+        if(!file.exists()) return;
+
+        try(DataInputStream stream = new DataInputStream(file.read(8192))){
+            if(stream.readInt() != indexVersion) return;
+
+            int amount = stream.readInt();
+            for(int i = 0; i < amount; i++){
+                String name = stream.readUTF();
+                IndexEntry entry = new IndexEntry();
+                entry.modified = stream.readLong();
+                entry.length = stream.readLong();
+                entry.version = stream.readInt();
+                entry.tags = SaveIO.getSaveWriter().readStringMap(stream);
+                entries.put(name, entry);
+            }
+        }catch(Exception e){
+            //a broken index is simply rebuilt
+            entries.clear();
+            Log.err("Failed to read save meta index.");
+            Log.err(e);
+        }
+    }
+
+    static class IndexEntry{
+        long modified, length;
+        int version;
+        StringMap tags;
+    }
+}
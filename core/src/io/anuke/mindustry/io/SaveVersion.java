@@ -4,6 +4,7 @@ import io.anuke.arc.collection.*;
 import io.anuke.arc.util.*;
 import io.anuke.arc.util.io.*;
 import io.anuke.mindustry.entities.*;
+import io.anuke.mindustry.entities.effect.*;
 import io.anuke.mindustry.entities.traits.*;
 import io.anuke.mindustry.game.*;
 import io.anuke.mindustry.gen.*;
@@ -12,6 +13,7 @@ import io.anuke.mindustry.type.*;
 import io.anuke.mindustry.world.*;
 
 import java.io.*;
+import java.util.Arrays;
 
 import static io.anuke.mindustry.Vars.*;
 
@@ -26,8 +28,16 @@ public abstract class SaveVersion extends SaveFileReader{
     }
 
     public SaveMeta getMeta(DataInput stream) throws IOException{
+        return getMeta(getMetaTags(stream));
+    }
+
+    /** Reads the tags of the meta region, which must be next in the stream. */
+    public StringMap getMetaTags(DataInput stream) throws IOException{
         stream.readInt(); //length of data, doesn't matter here
-        StringMap map = readStringMap(stream);
+        return readStringMap(stream);
+    }
+
+    public SaveMeta getMeta(StringMap map){
         return new SaveMeta(map.getInt("version"), map.getLong("saved"), map.getLong("playtime"), map.getInt("build"), map.get("mapname"), map.getInt("wave"), JsonIO.read(Rules.class, map.get("rules", "{}")), map);
     }
 
@@ -37,7 +47,7 @@ public abstract class SaveVersion extends SaveFileReader{
     }
 
     @Override
-    public final void read(DataInputStream stream, CounterInputStream counter, WorldContext context) throws IOException{
+    public void read(DataInputStream stream, CounterInputStream counter, WorldContext context) throws IOException{
         region("meta", stream, counter, this::readMeta);
         region("content", stream, counter, this::readContentHeader);
 
@@ -49,13 +59,46 @@ public abstract class SaveVersion extends SaveFileReader{
         }
     }
 
-    public final void write(DataOutputStream stream, StringMap extraTags) throws IOException{
+    public void write(DataOutputStream stream, StringMap extraTags) throws IOException{
         region("meta", stream, out -> writeMeta(out, extraTags));
         region("content", stream, this::writeContentHeader);
         region("map", stream, this::writeMap);
         region("entities", stream, this::writeEntities);
     }
 
+    /**
+     * Captures the current state of the world for {@link #write(DataOutputStream, SaveState)}. Must be called on the main thread.
+     * Only tile IDs and the serialized tile entities are copied here, the map itself is encoded when the state is written.
+     */
+    public SaveState capture(StringMap extraTags) throws IOException{
+        int width = world.width(), height = world.height();
+        SaveState state = new SaveState(width, height);
+        state.meta = encode(out -> writeMeta(out, extraTags));
+        state.content = encode(this::writeContentHeader);
+        state.entities = encode(this::writeEntities);
+
+        for(int i = 0; i < width * height; i++){
+            Tile tile = world.rawTile(i % width, i / width);
+            state.floors[i] = tile.floorID();
+            state.overlays[i] = tile.overlayID();
+            state.blocks[i] = tile.blockID();
+
+            if(tile.entity != null){
+                byteOutputSmall.reset();
+                dataBytesSmall.writeByte(tile.entity.version());
+                tile.entity.write(dataBytesSmall);
+                state.tileEntities[i] = Arrays.copyOf(byteOutputSmall.getBytes(), byteOutputSmall.size());
+            }
+        }
+
+        return state;
+    }
+
+    /** Writes state captured by {@link #capture(StringMap)}. Can be called from any thread, if the version supports it. */
+    public void write(DataOutputStream stream, SaveState state) throws IOException{
+        throw new IOException("Save version " + version + " can't be written from captured state.");
+    }
+
     public void writeMeta(DataOutput stream, StringMap tags) throws IOException{
         writeStringMap(stream, StringMap.of(
             "saved", Time.millis(),
@@ -94,14 +137,19 @@ public abstract class SaveVersion extends SaveFileReader{
         stream.writeShort(world.width());
         stream.writeShort(world.height());
 
-        //floor + overlay
-        for(int i = 0; i < world.width() * world.height(); i++){
+        writeFloors(stream, 0, world.width() * world.height());
+        writeBlocks(stream, 0, world.width() * world.height());
+    }
+
+    /** Writes the floor and overlay of every tile with an index in the range [start, end). */
+    public void writeFloors(DataOutput stream, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
             Tile tile = world.rawTile(i % world.width(), i / world.width());
             stream.writeShort(tile.floorID());
             stream.writeShort(tile.overlayID());
             int consecutives = 0;
 
-            for(int j = i + 1; j < world.width() * world.height() && consecutives < 255; j++){
+            for(int j = i + 1; j < end && consecutives < 255; j++){
                 Tile nextTile = world.rawTile(j % world.width(), j / world.width());
 
                 if(nextTile.floorID() != tile.floorID() || nextTile.overlayID() != tile.overlayID()){
@@ -114,9 +162,11 @@ public abstract class SaveVersion extends SaveFileReader{
             stream.writeByte(consecutives);
             i += consecutives;
         }
+    }
 
-        //blocks
-        for(int i = 0; i < world.width() * world.height(); i++){
+    /** Writes the block and tile entity of every tile with an index in the range [start, end). */
+    public void writeBlocks(DataOutput stream, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
             Tile tile = world.rawTile(i % world.width(), i / world.width());
             stream.writeShort(tile.blockID());
 
@@ -129,7 +179,7 @@ public abstract class SaveVersion extends SaveFileReader{
                 //write consecutive non-entity blocks
                 int consecutives = 0;
 
-                for(int j = i + 1; j < world.width() * world.height() && consecutives < 255; j++){
+                for(int j = i + 1; j < end && consecutives < 255; j++){
                     Tile nextTile = world.rawTile(j % world.width(), j / world.width());
 
                     if(nextTile.blockID() != tile.blockID()){
@@ -157,57 +207,70 @@ public abstract class SaveVersion extends SaveFileReader{
             context.resize(width, height);
 
             //read floor and create tiles first
-            for(int i = 0; i < width * height; i++){
-                int x = i % width, y = i / width;
-                short floorid = stream.readShort();
-                short oreid = stream.readShort();
-                int consecutives = stream.readUnsignedByte();
+            readFloors(stream, context, width, 0, width * height);
+            //read blocks
+            readBlocks(stream, context, width, 0, width * height);
+        }finally{
+            if(!generating) context.end();
+        }
+    }
 
-                context.create(x, y, floorid, oreid, (short)0);
+    /** Reads floors written by {@link #writeFloors(DataOutput, int, int)}, creating the tiles in the range [start, end). */
+    public void readFloors(DataInput stream, WorldContext context, int width, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
+            int x = i % width, y = i / width;
+            short floorid = stream.readShort();
+            short oreid = stream.readShort();
+            int consecutives = stream.readUnsignedByte();
 
-                for(int j = i + 1; j < i + 1 + consecutives; j++){
-                    int newx = j % width, newy = j / width;
-                    context.create(newx, newy, floorid, oreid, (short)0);
-                }
+            context.create(x, y, floorid, oreid, (short)0);
 
-                i += consecutives;
+            for(int j = i + 1; j < i + 1 + consecutives; j++){
+                int newx = j % width, newy = j / width;
+                context.create(newx, newy, floorid, oreid, (short)0);
             }
 
-            //read blocks
-            for(int i = 0; i < width * height; i++){
-                int x = i % width, y = i / width;
-                Block block = content.block(stream.readShort());
-                Tile tile = context.tile(x, y);
-                tile.setBlock(block);
-
-                if(tile.entity != null){
-                    try{
-                        readChunk(stream, true, in -> {
-                            byte version = in.readByte();
-                            tile.entity.read(in, version);
-                        });
-                    }catch(Exception e){
-                        throw new IOException("Failed to read tile entity of block: " + block, e);
-                    }
-                }else{
-                    int consecutives = stream.readUnsignedByte();
+            i += consecutives;
+        }
+    }
 
-                    for(int j = i + 1; j < i + 1 + consecutives; j++){
-                        int newx = j % width, newy = j / width;
-                        context.tile(newx, newy).setBlock(block);
-                    }
+    /** Reads blocks written by {@link #writeBlocks(DataOutput, int, int)}. Tiles in the range [start, end) must already exist. */
+    public void readBlocks(DataInput stream, WorldContext context, int width, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
+            int x = i % width, y = i / width;
+            Block block = content.block(stream.readShort());
+            Tile tile = context.tile(x, y);
+            tile.setBlock(block);
 
-                    i += consecutives;
+            if(tile.entity != null){
+                try{
+                    readChunk(stream, true, in -> {
+                        byte version = in.readByte();
+                        tile.entity.read(in, version);
+                    });
+                }catch(Exception e){
+                    throw new IOException("Failed to read tile entity of block: " + block, e);
                 }
+            }else{
+                int consecutives = stream.readUnsignedByte();
+
+                for(int j = i + 1; j < i + 1 + consecutives; j++){
+                    int newx = j % width, newy = j / width;
+                    context.tile(newx, newy).setBlock(block);
+                }
+
+                i += consecutives;
             }
-        }finally{
-            if(!generating) context.end();
         }
     }
 
     public void writeEntities(DataOutput stream) throws IOException{
+        //puddles and fires are not entities, but are saved as entities of their own groups
+        Array<Puddle> puddles = surface.savePuddles();
+        Array<Fire> fires = surface.saveFires();
+
         //write entity chunk
-        int groups = 0;
+        int groups = (puddles.isEmpty() ? 0 : 1) + (fires.isEmpty() ? 0 : 1);
 
         for(EntityGroup<?> group : entities.all()){
             if(!group.isEmpty() && group.all().get(0) instanceof SaveTrait){
@@ -231,6 +294,28 @@ public abstract class SaveVersion extends SaveFileReader{
                 }
             }
         }
+
+        if(!puddles.isEmpty()){
+            stream.writeInt(puddles.size);
+            for(Puddle puddle : puddles){
+                writeChunk(stream, true, out -> {
+                    out.writeByte(puddle.getTypeID().id);
+                    out.writeByte(puddle.version());
+                    puddle.writeSave(out);
+                });
+            }
+        }
+
+        if(!fires.isEmpty()){
+            stream.writeInt(fires.size);
+            for(Fire fire : fires){
+                writeChunk(stream, true, out -> {
+                    out.writeByte(fire.getTypeID().id);
+                    out.writeByte(fire.version());
+                    fire.writeSave(out);
+                });
+            }
+        }
     }
 
     public void readEntities(DataInput stream) throws IOException{
@@ -243,7 +328,7 @@ public abstract class SaveVersion extends SaveFileReader{
                 readChunk(stream, true, in -> {
                     byte typeid = in.readByte();
                     byte version = in.readByte();
-                    SaveTrait trait = (SaveTrait)content.<TypeID>getByID(ContentType.typeid, typeid).constructor.get();
+                    Saveable trait = (Saveable)content.<TypeID>getByID(ContentType.typeid, typeid).constructor.get();
                     trait.readSave(in, version);
                 });
             }
@@ -303,4 +388,24 @@ public abstract class SaveVersion extends SaveFileReader{
             }
         }
     }
+
+    /** State of the world captured on the main thread, so that it can be encoded and compressed on another thread. */
+    public static class SaveState{
+        public final int width, height;
+        /** Floor, overlay and block ID of each tile, by tile index. */
+        public final short[] floors, overlays, blocks;
+        /** Version and data of the entity of each tile, or null for tiles without one. */
+        public final byte[][] tileEntities;
+        /** Contents of the meta, content and entity regions. */
+        public byte[] meta, content, entities;
+
+        public SaveState(int width, int height){
+            this.width = width;
+            this.height = height;
+            this.floors = new short[width * height];
+            this.overlays = new short[width * height];
+            this.blocks = new short[width * height];
+            this.tileEntities = new byte[width * height][];
+        }
+    }
 }
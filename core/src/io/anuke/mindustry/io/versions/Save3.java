@@ -0,0 +1,252 @@
+package io.anuke.mindustry.io.versions;
+
+import io.anuke.arc.collection.*;
+import io.anuke.arc.util.io.*;
+import io.anuke.mindustry.io.*;
+import io.anuke.mindustry.world.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static io.anuke.mindustry.Vars.*;
+
+/**
+ * Splits the map into chunks of {@link #chunkRows} rows, each encoded and compressed independently on the common fork-join pool.
+ * Saves are written from state captured with {@link #capture(StringMap)}, so that only the capture has to run on the main thread.
+ * Unlike older versions, the file isn't deflated as a whole, so a chunk can be read by seeking to its offset and inflating only its bytes.
+ * Layout after the header: meta and content regions, then the map region, then the deflated entity region.
+ * The map region holds width, height, chunk rows, chunk count, then the file offset, floor length and block length of each chunk,
+ * then the floor and block data of each chunk, in order.
+ */
+@SuppressWarnings("unchecked")
+public class Save3 extends SaveVersion{
+    /** Amount of tile rows in each chunk. */
+    public static final int chunkRows = 32;
+
+    public Save3(){
+        super(3);
+    }
+
+    @Override
+    public void write(DataOutputStream stream, StringMap extraTags) throws IOException{
+        write(stream, capture(extraTags));
+    }
+
+    /**
+     * Encodes and compresses the map from captured state, using only buffers local to this call.
+     * Offsets are counted from the start of the stream, which must be the start of the file.
+     */
+    @Override
+    public void write(DataOutputStream stream, SaveState state) throws IOException{
+        int width = state.width, height = state.height;
+        int chunks = chunks(height, chunkRows);
+
+        ForkJoinTask<byte[][]>[] tasks = new ForkJoinTask[chunks];
+        for(int i = 0; i < chunks; i++){
+            int start = i * chunkRows * width, end = Math.min((i + 1) * chunkRows, height) * width;
+            tasks[i] = ForkJoinPool.commonPool().submit(() -> new byte[][]{
+                deflate(encode(out -> writeFloors(out, state, start, end))),
+                deflate(encode(out -> writeBlocks(out, state, start, end)))
+            });
+        }
+
+        byte[] entities = deflate(state.entities);
+
+        byte[][][] data = new byte[chunks][][];
+        int length = 10 + chunks * 12;
+        for(int i = 0; i < chunks; i++){
+            data[i] = get(tasks[i]);
+            length += data[i][0].length + data[i][1].length;
+        }
+
+        stream.writeInt(state.meta.length);
+        stream.write(state.meta);
+        stream.writeInt(state.content.length);
+        stream.write(state.content);
+
+        //map region
+        stream.writeInt(length);
+        stream.writeShort(width);
+        stream.writeShort(height);
+        stream.writeShort(chunkRows);
+        stream.writeInt(chunks);
+
+        int offset = stream.size() + chunks * 12;
+        for(byte[][] chunk : data){
+            stream.writeInt(offset);
+            stream.writeInt(chunk[0].length);
+            stream.writeInt(chunk[1].length);
+            offset += chunk[0].length + chunk[1].length;
+        }
+
+        for(byte[][] chunk : data){
+            stream.write(chunk[0]);
+            stream.write(chunk[1]);
+        }
+
+        stream.writeInt(entities.length);
+        stream.write(entities);
+    }
+
+    @Override
+    public void read(DataInputStream stream, CounterInputStream counter, WorldContext context) throws IOException{
+        region("meta", stream, counter, this::readMeta);
+        region("content", stream, counter, this::readContentHeader);
+
+        try{
+            region("map", stream, counter, in -> readMap(in, context));
+
+            byte[] entities = new byte[stream.readInt()];
+            stream.readFully(entities);
+            readEntities(new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(entities))));
+        }finally{
+            content.setTemporaryMapper(null);
+        }
+    }
+
+    @Override
+    public void writeMap(DataOutput stream) throws IOException{
+        throw new IOException("Save3 maps are written with the rest of the file, as the chunk index holds file offsets.");
+    }
+
+    @Override
+    public void readMap(DataInput stream, WorldContext context) throws IOException{
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int rows = stream.readUnsignedShort();
+        int chunks = stream.readInt();
+
+        int[] offsets = new int[chunks], floorLengths = new int[chunks], blockLengths = new int[chunks];
+        int total = 0, first = 0;
+        for(int i = 0; i < chunks; i++){
+            offsets[i] = stream.readInt();
+            floorLengths[i] = stream.readInt();
+            blockLengths[i] = stream.readInt();
+
+            //chunks follow the index, so file offsets are made relative to the first chunk
+            if(i == 0) first = offsets[0];
+            offsets[i] -= first;
+            total = Math.max(total, offsets[i] + floorLengths[i] + blockLengths[i]);
+        }
+
+        byte[] data = new byte[total];
+        stream.readFully(data);
+
+        //inflate on all cores; tiles are only created and modified on this thread
+        ForkJoinTask<byte[][]>[] tasks = new ForkJoinTask[chunks];
+        for(int i = 0; i < chunks; i++){
+            int index = i;
+            tasks[i] = ForkJoinPool.commonPool().submit(() -> new byte[][]{
+                inflate(data, offsets[index], floorLengths[index]),
+                inflate(data, offsets[index] + floorLengths[index], blockLengths[index])
+            });
+        }
+
+        byte[][][] inflated = new byte[chunks][][];
+        for(int i = 0; i < chunks; i++){
+            inflated[i] = get(tasks[i]);
+        }
+
+        boolean generating = context.isGenerating();
+
+        if(!generating) context.begin();
+        try{
+            context.resize(width, height);
+
+            //all tiles need to exist before any block is placed, as multiblocks can span chunks
+            for(int i = 0; i < chunks; i++){
+                int start = i * rows * width, end = Math.min((i + 1) * rows, height) * width;
+                readFloors(new DataInputStream(new ByteArrayInputStream(inflated[i][0])), context, width, start, end);
+            }
+
+            for(int i = 0; i < chunks; i++){
+                int start = i * rows * width, end = Math.min((i + 1) * rows, height) * width;
+                readBlocks(new DataInputStream(new ByteArrayInputStream(inflated[i][1])), context, width, start, end);
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
+
+    /** Writes floors of captured state in the same encoding as {@link #writeFloors(DataOutput, int, int)}. */
+    private static void writeFloors(DataOutput stream, SaveState state, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
+            stream.writeShort(state.floors[i]);
+            stream.writeShort(state.overlays[i]);
+            int consecutives = 0;
+
+            for(int j = i + 1; j < end && consecutives < 255; j++){
+                if(state.floors[j] != state.floors[i] || state.overlays[j] != state.overlays[i]){
+                    break;
+                }
+
+                consecutives++;
+            }
+
+            stream.writeByte(consecutives);
+            i += consecutives;
+        }
+    }
+
+    /** Writes blocks of captured state in the same encoding as {@link #writeBlocks(DataOutput, int, int)}. */
+    private static void writeBlocks(DataOutput stream, SaveState state, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
+            stream.writeShort(state.blocks[i]);
+            byte[] entity = state.tileEntities[i];
+
+            if(entity != null){
+                if(entity.length > Short.MAX_VALUE){
+                    throw new IOException("Byte write length exceeded: " + entity.length + " > " + Short.MAX_VALUE);
+                }
+                stream.writeShort(entity.length);
+                stream.write(entity);
+            }else{
+                int consecutives = 0;
+
+                for(int j = i + 1; j < end && consecutives < 255; j++){
+                    if(state.blocks[j] != state.blocks[i]){
+                        break;
+                    }
+
+                    consecutives++;
+                }
+
+                stream.writeByte(consecutives);
+                i += consecutives;
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 16);
+        try(OutputStream output = new FastDeflaterOutputStream(bytes)){
+            output.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length * 4);
+        try(InflaterInputStream input = new InflaterInputStream(new ByteArrayInputStream(data, offset, length))){
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = input.read(buffer)) != -1){
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T get(ForkJoinTask<T> task) throws IOException{
+        try{
+            return task.get();
+        }catch(Exception e){
+            throw new IOException("Failed to process map chunk.", e);
+        }
+    }
+
+    private static int chunks(int height, int rows){
+        return (height + rows - 1) / rows;
+    }
+}
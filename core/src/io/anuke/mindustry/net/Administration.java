@@ -7,9 +7,8 @@ import io.anuke.arc.collection.*;
 import static io.anuke.mindustry.Vars.headless;
 
 public class Administration{
-    /** All player info. Maps UUIDs to info. This persists throughout restarts. */
-    private ObjectMap<String, PlayerInfo> playerInfo = new ObjectMap<>();
-    private Array<String> bannedIPs = new Array<>();
+    /** All player info and banned IPs. This persists throughout restarts. */
+    private final PlayerStore players = new PlayerStore(Core.settings.getDataDirectory().child("players.dat"));
     private Array<String> whitelist = new Array<>();
 
     public Administration(){
@@ -29,6 +28,15 @@ public class Administration{
         Core.settings.putSave("playerlimit", limit);
     }
 
+    /** @return the maximum amount of received packets the server handles per frame. */
+    public int getPacketBudget(){
+        return Core.settings.getInt("packetbudget", 1000);
+    }
+
+    public void setPacketBudget(int budget){
+        Core.settings.putSave("packetbudget", budget);
+    }
+
     public void setStrict(boolean on){
         Core.settings.putSave("strict", on);
     }
@@ -54,6 +62,7 @@ public class Administration{
         info.timesJoined++;
         if(!info.names.contains(name, false)) info.names.add(name);
         if(!info.ips.contains(ip, false)) info.ips.add(ip);
+        players.changed(info);
     }
 
     public boolean banPlayer(String uuid){
@@ -65,16 +74,15 @@ public class Administration{
      * If there are players who at any point had this IP, they will be UUID banned as well.
      */
     public boolean banPlayerIP(String ip){
-        if(bannedIPs.contains(ip, false))
+        if(players.isBanned(ip))
             return false;
 
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
-                info.banned = true;
-            }
+        for(PlayerInfo info : players.withIP(ip)){
+            info.banned = true;
+            players.changed(info);
         }
 
-        bannedIPs.add(ip);
+        players.setBanned(ip, true);
         save();
 
         return true;
@@ -82,10 +90,12 @@ public class Administration{
 
     /** Bans a player by UUID; returns whether this player was already banned. */
     public boolean banPlayerID(String id){
-        if(playerInfo.containsKey(id) && playerInfo.get(id).banned)
+        if(players.get(id) != null && players.get(id).banned)
             return false;
 
-        getCreateInfo(id).banned = true;
+        PlayerInfo info = getCreateInfo(id);
+        info.banned = true;
+        players.changed(info);
 
         save();
 
@@ -97,17 +107,14 @@ public class Administration{
      * This method also unbans any player that was banned and had this IP.
      */
     public boolean unbanPlayerIP(String ip){
-        boolean found = bannedIPs.contains(ip, false);
+        boolean found = players.setBanned(ip, false);
 
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
-                info.banned = false;
-                found = true;
-            }
+        for(PlayerInfo info : players.withIP(ip)){
+            info.banned = false;
+            players.changed(info);
+            found = true;
         }
 
-        bannedIPs.removeValue(ip, false);
-
         if(found) save();
 
         return found;
@@ -124,7 +131,10 @@ public class Administration{
             return false;
 
         info.banned = false;
-        bannedIPs.removeAll(info.ips, false);
+        players.changed(info);
+        for(String ip : info.ips){
+            players.setBanned(ip, false);
+        }
         save();
 
         return true;
@@ -135,7 +145,7 @@ public class Administration{
      */
     public Array<PlayerInfo> getAdmins(){
         Array<PlayerInfo> result = new Array<>();
-        for(PlayerInfo info : playerInfo.values()){
+        for(PlayerInfo info : players.all()){
             if(info.admin){
                 result.add(info);
             }
@@ -148,7 +158,7 @@ public class Administration{
      */
     public Array<PlayerInfo> getBanned(){
         Array<PlayerInfo> result = new Array<>();
-        for(PlayerInfo info : playerInfo.values()){
+        for(PlayerInfo info : players.all()){
             if(info.banned){
                 result.add(info);
             }
@@ -160,7 +170,7 @@ public class Administration{
      * Returns all banned IPs. This does not include the IPs of ID-banned players.
      */
     public Array<String> getBannedIPs(){
-        return bannedIPs;
+        return players.getBannedIPs();
     }
 
     /**
@@ -174,6 +184,7 @@ public class Administration{
 
         info.adminUsid = usid;
         info.admin = true;
+        players.changed(info);
         save();
 
         return true;
@@ -189,6 +200,7 @@ public class Administration{
             return false;
 
         info.admin = false;
+        players.changed(info);
         save();
 
         return true;
@@ -210,7 +222,7 @@ public class Administration{
         PlayerInfo info = getCreateInfo(id);
         if(whitelist.contains(info.adminUsid + id)) return false;
         whitelist.add(info.adminUsid + id);
-        save();
+        saveWhitelist();
         return true;
     }
 
@@ -218,14 +230,15 @@ public class Administration{
         PlayerInfo info = getCreateInfo(id);
         if(whitelist.contains(info.adminUsid + id)){
             whitelist.remove(info.adminUsid + id);
-            save();
+            saveWhitelist();
             return true;
         }
         return false;
     }
 
     public boolean isIPBanned(String ip){
-        return bannedIPs.contains(ip, false) || (findByIP(ip) != null && findByIP(ip).banned);
+        PlayerInfo info = findByIP(ip);
+        return players.isBanned(ip) || (info != null && info.banned);
     }
 
     public boolean isIDBanned(String uuid){
@@ -241,71 +254,89 @@ public class Administration{
     public ObjectSet<PlayerInfo> findByName(String name){
         ObjectSet<PlayerInfo> result = new ObjectSet<>();
 
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.lastName.toLowerCase().equals(name.toLowerCase()) || (info.names.contains(name, false))
-            || info.ips.contains(name, false) || info.id.equals(name)){
+        for(PlayerInfo info : players.withNameCandidates(name)){
+            if(info.lastName.toLowerCase().equals(name.toLowerCase()) || info.names.contains(name, false)){
                 result.add(info);
             }
         }
 
-        return result;
-    }
+        result.addAll(players.withIP(name));
 
-    public Array<PlayerInfo> findByIPs(String ip){
-        Array<PlayerInfo> result = new Array<>();
-
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
-                result.add(info);
-            }
+        PlayerInfo info = players.get(name);
+        if(info != null){
+            result.add(info);
         }
 
         return result;
     }
 
+    public Array<PlayerInfo> findByIPs(String ip){
+        return players.withIP(ip);
+    }
+
     public PlayerInfo getInfo(String id){
         return getCreateInfo(id);
     }
 
     public PlayerInfo getInfoOptional(String id){
-        return playerInfo.get(id);
+        return players.get(id);
     }
 
     public PlayerInfo findByIP(String ip){
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
-                return info;
-            }
-        }
-        return null;
+        return players.firstWithIP(ip);
     }
 
     public Array<PlayerInfo> getWhitelisted(){
-        return playerInfo.values().toArray().select(p -> isWhitelisted(p.id, p.adminUsid));
+        Array<PlayerInfo> result = new Array<>();
+        for(PlayerInfo info : players.all()){
+            if(isWhitelisted(info.id, info.adminUsid)){
+                result.add(info);
+            }
+        }
+        return result;
     }
 
+    /** Returns the info of this player, creating it if it doesn't exist. Callers that modify it must call {@link #changed(PlayerInfo)}. */
     private PlayerInfo getCreateInfo(String id){
-        if(playerInfo.containsKey(id)){
-            return playerInfo.get(id);
+        PlayerInfo info = players.get(id);
+        if(info != null){
+            return info;
         }else{
-            PlayerInfo info = new PlayerInfo(id);
-            playerInfo.put(id, info);
+            info = new PlayerInfo(id);
+            players.add(info);
             save();
             return info;
         }
     }
 
+    /** Marks player info as changed after modifying it, so that it is written on the next save. */
+    public void changed(PlayerInfo info){
+        players.changed(info);
+    }
+
+    /** Appends all changed player info and IP bans to the player log. */
     public void save(){
-        Core.settings.putObject("player-info", playerInfo);
-        Core.settings.putObject("banned-ips", bannedIPs);
+        players.flush();
+    }
+
+    private void saveWhitelist(){
         Core.settings.putObject("whitelisted", whitelist);
         Core.settings.save();
     }
 
     @SuppressWarnings("unchecked")
     private void load(){
-        playerInfo = Core.settings.getObject("player-info", ObjectMap.class, ObjectMap::new);
-        bannedIPs = Core.settings.getObject("banned-ips", Array.class, Array::new);
+        ObjectMap<String, PlayerInfo> legacyInfo = Core.settings.getObject("player-info", ObjectMap.class, ObjectMap::new);
+        Array<String> legacyBans = Core.settings.getObject("banned-ips", Array.class, Array::new);
+        players.load(legacyInfo, legacyBans);
+
+        //player info used to be stored in the settings, which were rewritten entirely on every save
+        if((legacyInfo.size > 0 || legacyBans.size > 0) && players.isStored()){
+            Core.settings.putObject("player-info", new ObjectMap<>());
+            Core.settings.putObject("banned-ips", new Array<>());
+            Core.settings.save();
+        }
+
         whitelist = Core.settings.getObject("whitelisted", Array.class, Array::new);
     }
 
@@ -1,5 +1,6 @@
 package io.anuke.mindustry.net;
 
+import io.anuke.annotations.Annotations.*;
 import io.anuke.arc.*;
 import io.anuke.arc.collection.*;
 import io.anuke.arc.function.*;
@@ -7,7 +8,6 @@ import io.anuke.arc.net.*;
 import io.anuke.arc.net.FrameworkMessage.*;
 import io.anuke.arc.util.*;
 import io.anuke.arc.util.async.*;
-import io.anuke.arc.util.pooling.*;
 import io.anuke.mindustry.net.Net.*;
 import io.anuke.mindustry.net.Packets.*;
 
@@ -15,7 +15,6 @@ import java.io.*;
 import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
-import java.util.concurrent.*;
 
 import static io.anuke.mindustry.Vars.*;
 
@@ -24,11 +23,51 @@ public class ArcNetImpl implements NetProvider{
     final Supplier<DatagramPacket> packetSupplier = () -> new DatagramPacket(new byte[256], 256);
 
     final Server server;
-    final CopyOnWriteArrayList<ArcConnection> connections = new CopyOnWriteArrayList<>();
+    final PacketSerializer serializer = new PacketSerializer();
+    /** Connections of the server, keyed by their arc connection ID. */
+    final ConnectionMap<ArcConnection> connections = new ConnectionMap<>();
+    /** Buffer of the packet currently being broadcast. */
+    final PreparedPacket prepared = new PreparedPacket();
+    /** Connections the packet currently being broadcast is sent to. Only accessed while holding the lock of {@link #prepared}. */
+    final Array<ArcConnection> broadcastTargets = new Array<>();
     Thread serverThread;
 
+    /** Packets received by the client, handled on the logic thread in the order they arrived. */
+    final PacketQueue clientQueue = new PacketQueue(4096, (con, object) -> {
+        try{
+            net.handleClientReceived(object);
+        }catch(Exception e){
+            handleException(e);
+        }
+    });
+
+    /** Packets received by the server, handled on the logic thread in the order they arrived, up to the packet budget per frame. */
+    final PacketQueue serverQueue = new PacketQueue(8192, (con, object) -> {
+        try{
+            net.handleServerReceived(con, object);
+        }catch(RuntimeException e){
+            if(e.getCause() instanceof ValidateException){
+                ValidateException v = (ValidateException)e.getCause();
+                Log.err("Validation failed: {0} ({1})", v.player.name, v.getMessage());
+            }else{
+                e.printStackTrace();
+            }
+        }catch(Exception e){
+            e.printStackTrace();
+        }
+
+        if(object instanceof Disconnect){
+            connections.remove(((ArcConnection)con).connection.getID());
+        }
+    }){
+        @Override
+        protected int budget(){
+            return netServer.admins.getPacketBudget();
+        }
+    };
+
     public ArcNetImpl(){
-        client = new Client(8192, 4096, new PacketSerializer());
+        client = new Client(8192, 4096, serializer);
         client.setDiscoveryPacket(packetSupplier);
         client.addListener(new NetListener(){
             @Override
@@ -37,7 +76,7 @@ public class ArcNetImpl implements NetProvider{
                 c.addressTCP = connection.getRemoteAddressTCP().getAddress().getHostAddress();
                 if(connection.getRemoteAddressTCP() != null) c.addressTCP = connection.getRemoteAddressTCP().toString();
 
-                Core.app.post(() -> net.handleClientReceived(c));
+                clientQueue.add(null, c);
             }
 
             @Override
@@ -48,25 +87,18 @@ public class ArcNetImpl implements NetProvider{
 
                 Disconnect c = new Disconnect();
                 c.reason = reason.toString();
-                Core.app.post(() -> net.handleClientReceived(c));
+                clientQueue.add(null, c);
             }
 
             @Override
             public void received(Connection connection, Object object){
                 if(object instanceof FrameworkMessage) return;
 
-                Core.app.post(() -> {
-                    try{
-                        net.handleClientReceived(object);
-                    }catch(Exception e){
-                        handleException(e);
-                    }
-                });
-
+                clientQueue.add(null, object);
             }
         });
 
-        server = new Server(4096 * 2, 4096, new PacketSerializer());
+        server = new Server(4096 * 2, 4096, serializer);
         server.setMulticast(multicastGroup, multicastPort);
         server.setDiscoveryHandler((address, handler) -> {
             ByteBuffer buffer = NetworkIO.writeServerData();
@@ -87,43 +119,27 @@ public class ArcNetImpl implements NetProvider{
 
                 Log.debug("&bRecieved connection: {0}", c.addressTCP);
 
-                connections.add(kn);
-                Core.app.post(() -> net.handleServerReceived(kn, c));
+                connections.put(connection.getID(), kn);
+                serverQueue.add(kn, c);
             }
 
             @Override
             public void disconnected(Connection connection, DcReason reason){
-                ArcConnection k = getByArcID(connection.getID());
+                ArcConnection k = connections.get(connection.getID());
                 if(k == null) return;
 
                 Disconnect c = new Disconnect();
                 c.reason = reason.toString();
 
-                Core.app.post(() -> {
-                    net.handleServerReceived(k, c);
-                    connections.remove(k);
-                });
+                serverQueue.add(k, c);
             }
 
             @Override
             public void received(Connection connection, Object object){
-                ArcConnection k = getByArcID(connection.getID());
+                ArcConnection k = connections.get(connection.getID());
                 if(object instanceof FrameworkMessage || k == null) return;
 
-                Core.app.post(() -> {
-                    try{
-                        net.handleServerReceived(k, object);
-                    }catch(RuntimeException e){
-                        if(e.getCause() instanceof ValidateException){
-                            ValidateException v = (ValidateException)e.getCause();
-                            Log.err("Validation failed: {0} ({1})", v.player.name, v.getMessage());
-                        }else{
-                            e.printStackTrace();
-                        }
-                    }catch(Exception e){
-                        e.printStackTrace();
-                    }
-                });
+                serverQueue.add(k, object);
             }
         });
     }
@@ -178,8 +194,36 @@ public class ArcNetImpl implements NetProvider{
         }catch(BufferOverflowException | BufferUnderflowException e){
             net.showError(e);
         }
+    }
 
-        Pools.free(object);
+    @Override
+    public void broadcast(Object object, SendMode mode, @Nullable NetConnection except){
+        if(mode == SendMode.tcp && object instanceof InvokePacket){
+            //reliable invokes are batched by each connection, which only copies their bytes
+            NetProvider.super.broadcast(object, mode, except);
+            return;
+        }
+
+        synchronized(prepared){
+            try{
+                prepared.buffer.clear();
+                serializer.write(prepared.buffer, object);
+            }catch(BufferOverflowException e){
+                //too large to prepare; let every connection fail to send it on its own
+                NetProvider.super.broadcast(object, mode, except);
+                return;
+            }
+
+            //copied, so connections removing themselves after failing to send don't cause others to be skipped
+            connections.copy(broadcastTargets);
+            for(int i = 0; i < broadcastTargets.size; i++){
+                ArcConnection con = broadcastTargets.get(i);
+                if(con != except){
+                    con.send(prepared, mode);
+                }
+            }
+            broadcastTargets.clear();
+        }
     }
 
     @Override
@@ -261,17 +305,6 @@ public class ArcNetImpl implements NetProvider{
         Threads.daemon(server::stop);
     }
 
-    ArcConnection getByArcID(int id){
-        for(int i = 0; i < connections.size(); i++){
-            ArcConnection con = connections.get(i);
-            if(con.connection != null && con.connection.getID() == id){
-                return con;
-            }
-        }
-
-        return null;
-    }
-
     private void handleException(Exception e){
         if(e instanceof ArcNetException){
             Core.app.post(() -> net.showError(new IOException("mismatch")));
@@ -297,6 +330,8 @@ public class ArcNetImpl implements NetProvider{
 
         @Override
         public void sendStream(Streamable stream){
+            //batched invokes must arrive before the stream
+            flush();
             connection.addListener(new InputStreamSender(stream.stream, 512){
                 int id;
 
@@ -321,7 +356,7 @@ public class ArcNetImpl implements NetProvider{
         }
 
         @Override
-        public void send(Object object, SendMode mode){
+        protected void sendDirect(Object object, SendMode mode){
             try{
                 if(mode == SendMode.tcp){
                     connection.sendTCP(object);
@@ -333,23 +368,33 @@ public class ArcNetImpl implements NetProvider{
                 Log.info("Error sending packet. Disconnecting invalid client!");
                 connection.close(DcReason.error);
 
-                ArcConnection k = getByArcID(connection.getID());
-                if(k != null) connections.remove(k);
+                connections.remove(connection.getID());
             }
         }
 
         @Override
         public void close(){
-            if(connection.isConnected()) connection.close(DcReason.closed);
+            if(connection.isConnected()){
+                flush();
+                connection.close(DcReason.closed);
+            }
         }
     }
 
+    /** A packet that is serialized once and then written as-is to every connection it is broadcast to. */
+    static class PreparedPacket{
+        final ByteBuffer buffer = ByteBuffer.allocate(4096 * 2);
+    }
+
     @SuppressWarnings("unchecked")
     public static class PacketSerializer implements NetSerializer{
 
         @Override
         public void write(ByteBuffer byteBuffer, Object o){
-            if(o instanceof FrameworkMessage){
+            if(o instanceof PreparedPacket){
+                ByteBuffer prepared = ((PreparedPacket)o).buffer;
+                byteBuffer.put(prepared.array(), 0, prepared.position());
+            }else if(o instanceof FrameworkMessage){
                 byteBuffer.put((byte)-2); //code for framework message
                 writeFramework(byteBuffer, (FrameworkMessage)o);
             }else{
@@ -369,7 +414,8 @@ public class ArcNetImpl implements NetProvider{
             if(id == -2){
                 return readFramework(byteBuffer);
             }else{
-                Packet packet = Pools.obtain((Class<Packet>)Registrator.getByID(id).type, (Supplier<Packet>)Registrator.getByID(id).constructor);
+                //this runs on the network thread, so the shared pools can't be used
+                Packet packet = PacketPool.obtain(id);
                 packet.read(byteBuffer);
                 return packet;
             }
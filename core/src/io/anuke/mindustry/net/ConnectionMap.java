@@ -0,0 +1,155 @@
+package io.anuke.mindustry.net;
+
+import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.collection.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Connections keyed by their int ID, looked up on the network thread for every received packet.
+ * Lookups don't lock; adding and removing locks, but never copies every connection. Connections are also kept in a dense array for broadcasting.
+ * Iterating and copying take a snapshot while locked, as removing swaps connections around in the dense array.
+ */
+@SuppressWarnings("unchecked")
+public class ConnectionMap<T> implements Iterable<T>{
+    private static final Entry tombstone = new Entry<>(0, null);
+
+    /** Open addressing table. Kept at most half full, so probing always ends at an empty slot. */
+    private volatile AtomicReferenceArray<Entry<T>> table = new AtomicReferenceArray<>(16);
+    private volatile Entry<T>[] dense = new Entry[8];
+    private volatile int size;
+    /** Amount of slots in the table that are in use or hold a tombstone. */
+    private int used;
+
+    /** @return the connection with this ID, or null if there is none. Safe to call from any thread. */
+    public @Nullable T get(int id){
+        AtomicReferenceArray<Entry<T>> table = this.table;
+        int mask = table.length() - 1;
+        for(int i = hash(id) & mask; ; i = (i + 1) & mask){
+            Entry<T> entry = table.get(i);
+            if(entry == null) return null;
+            if(entry != tombstone && entry.id == id) return entry.value;
+        }
+    }
+
+    /** Replaces the contents of the array with every connection. Unlike iterating, this doesn't allocate. */
+    public synchronized void copy(Array<T> out){
+        out.clear();
+        out.ensureCapacity(size);
+        for(int i = 0; i < size; i++){
+            out.add(dense[i].value);
+        }
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public synchronized void put(int id, T value){
+        remove(id);
+
+        if((used + 1) * 2 > table.length()){
+            //grow only if live entries take up the space, otherwise just clear out tombstones
+            rehash(size * 4 > table.length() ? table.length() * 2 : table.length());
+        }
+
+        Entry<T> entry = new Entry<>(id, value);
+        insert(table, entry);
+        used++;
+
+        if(size == dense.length){
+            dense = Arrays.copyOf(dense, size * 2);
+        }
+        entry.index = size;
+        dense[size] = entry;
+        size++;
+    }
+
+    /** @return the removed connection, or null if there was none with this ID. */
+    public synchronized @Nullable T remove(int id){
+        AtomicReferenceArray<Entry<T>> table = this.table;
+        int mask = table.length() - 1;
+        for(int i = hash(id) & mask; ; i = (i + 1) & mask){
+            Entry<T> entry = table.get(i);
+            if(entry == null) return null;
+            if(entry != tombstone && entry.id == id){
+                table.set(i, tombstone);
+
+                //move the last connection into the gap
+                Entry<T>[] dense = this.dense;
+                Entry<T> last = dense[size - 1];
+                dense[entry.index] = last;
+                last.index = entry.index;
+                dense[size - 1] = null;
+                size--;
+                return entry.value;
+            }
+        }
+    }
+
+    public synchronized void clear(){
+        table = new AtomicReferenceArray<>(16);
+        dense = new Entry[8];
+        size = used = 0;
+    }
+
+    @Override
+    public synchronized Iterator<T> iterator(){
+        Object[] values = new Object[size];
+        for(int i = 0; i < size; i++){
+            values[i] = dense[i].value;
+        }
+
+        return new Iterator<T>(){
+            int index;
+
+            @Override
+            public boolean hasNext(){
+                return index < values.length;
+            }
+
+            @Override
+            public T next(){
+                return (T)values[index++];
+            }
+        };
+    }
+
+    private void rehash(int capacity){
+        AtomicReferenceArray<Entry<T>> next = new AtomicReferenceArray<>(capacity);
+        for(int i = 0; i < size; i++){
+            insert(next, dense[i]);
+        }
+        used = size;
+        //readers still probing the old table find the same connections there
+        table = next;
+    }
+
+    private static <T> void insert(AtomicReferenceArray<Entry<T>> table, Entry<T> entry){
+        int mask = table.length() - 1;
+        for(int i = hash(entry.id) & mask; ; i = (i + 1) & mask){
+            if(table.get(i) == null){
+                table.set(i, entry);
+                return;
+            }
+        }
+    }
+
+    private static int hash(int id){
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static class Entry<T>{
+        final int id;
+        final T value;
+        /** Index in the dense array. Only accessed while locked. */
+        int index;
+
+        Entry(int id, T value){
+            this.id = id;
+            this.value = value;
+        }
+    }
+}
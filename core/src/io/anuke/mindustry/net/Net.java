@@ -5,7 +5,6 @@ import io.anuke.arc.*;
 import io.anuke.arc.collection.*;
 import io.anuke.arc.function.*;
 import io.anuke.arc.util.*;
-import io.anuke.arc.util.pooling.*;
 import io.anuke.mindustry.gen.*;
 import io.anuke.mindustry.net.Packets.*;
 import io.anuke.mindustry.net.Streamable.*;
@@ -181,9 +180,7 @@ public class Net{
     /** Send an object to all connected clients, or to the server if this is a client.*/
     public void send(Object object, SendMode mode){
         if(server){
-            for(NetConnection con : provider.getConnections()){
-                con.send(object, mode);
-            }
+            provider.broadcast(object, mode, null);
         }else{
             provider.sendClient(object, mode);
         }
@@ -191,11 +188,7 @@ public class Net{
 
     /** Send an object to everyone EXCEPT a certain client. Server-side only.*/
     public void sendExcept(NetConnection except, Object object, SendMode mode){
-        for(NetConnection con : getConnections()){
-            if(con != except){
-                con.send(object, mode);
-            }
-        }
+        provider.broadcast(object, mode, except);
     }
 
     public @Nullable StreamBuilder getCurrentStream(){
@@ -221,7 +214,17 @@ public class Net{
      */
     public void handleClientReceived(Object object){
 
-        if(object instanceof StreamBegin){
+        if(object instanceof InvokeBatch){
+            InvokeBatch batch = (InvokeBatch)object;
+            try{
+                //handled one by one, so that the priority of each invoke is respected while loading
+                for(InvokePacket invoke : batch.invokes){
+                    handleClientReceived(invoke);
+                }
+            }finally{
+                PacketPool.free(batch);
+            }
+        }else if(object instanceof StreamBegin){
             StreamBegin b = (StreamBegin)object;
             streams.put(b.id, currentStream = new StreamBuilder(b));
 
@@ -242,11 +245,11 @@ public class Net{
             if(clientLoaded || ((object instanceof Packet) && ((Packet)object).isImportant())){
                 if(clientListeners.get(object.getClass()) != null)
                     clientListeners.get(object.getClass()).accept(object);
-                Pools.free(object);
+                PacketPool.free(object);
             }else if(!((object instanceof Packet) && ((Packet)object).isUnimportant())){
                 packetQueue.add(object);
             }else{
-                Pools.free(object);
+                PacketPool.free(object);
             }
         }else{
             Log.err("Unhandled packet type: '{0}'!", object);
@@ -258,10 +261,15 @@ public class Net{
      */
     public void handleServerReceived(NetConnection connection, Object object){
 
-        if(serverListeners.get(object.getClass()) != null){
+        if(object instanceof InvokeBatch){
+            //only the server batches invokes; unpacking them here would get around the per-frame packet budget
+            PacketPool.free(object);
+            Log.info("Connection {0} sent an invoke batch, kicking it.", connection.address);
+            connection.kick(KickReason.kick);
+        }else if(serverListeners.get(object.getClass()) != null){
             if(serverListeners.get(object.getClass()) != null)
                 serverListeners.get(object.getClass()).accept(connection, object);
-            Pools.free(object);
+            PacketPool.free(object);
         }else{
             Log.err("Unhandled packet type: '{0}'!", object.getClass());
         }
@@ -313,6 +321,15 @@ public class Net{
         /** Send an object to the server. */
         void sendClient(Object object, SendMode mode);
 
+        /** Send an object to every connected client except one, if it isn't null. Implementations may serialize it only once. */
+        default void broadcast(Object object, SendMode mode, @Nullable NetConnection except){
+            for(NetConnection con : getConnections()){
+                if(con != except){
+                    con.send(object, mode);
+                }
+            }
+        }
+
         /** Disconnect from the server. */
         void disconnectClient();
 
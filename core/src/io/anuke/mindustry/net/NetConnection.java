@@ -1,7 +1,9 @@
 package io.anuke.mindustry.net;
 
 import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.*;
 import io.anuke.arc.util.*;
+import io.anuke.arc.util.async.*;
 import io.anuke.mindustry.entities.type.*;
 import io.anuke.mindustry.gen.*;
 import io.anuke.mindustry.net.Administration.*;
@@ -9,10 +11,15 @@ import io.anuke.mindustry.net.Net.*;
 import io.anuke.mindustry.net.Packets.*;
 
 import java.io.*;
+import java.nio.*;
+import java.util.concurrent.atomic.*;
 
 import static io.anuke.mindustry.Vars.netServer;
 
 public abstract class NetConnection{
+    /** Maximum size of the invokes in one batch; the receiving end can't read larger packets. */
+    public static final int maxBatchSize = 4000;
+
     public final String address;
     public boolean mobile, modclient;
     public @Nullable Player player;
@@ -25,6 +32,34 @@ public abstract class NetConnection{
     public boolean hasConnected, hasBegunConnecting;
     public float viewWidth, viewHeight, viewX, viewY;
 
+    /** Entity data sent in recent snapshots, used as baselines for delta-encoding. */
+    public final SnapshotHistory snapshots = new SnapshotHistory();
+    /** ID of the last entity snapshot sent to this connection. */
+    public int lastSentSnapshot = -1;
+    /** ID of the last entity snapshot the client has fully received, or -1 if there is none. */
+    public int lastAckedSnapshot = -1;
+    /** Snapshot of this connection that is currently being built off the logic thread, if any. */
+    public @Nullable AsyncResult<?> syncTask;
+    /**
+     * Incremented whenever world data is sent, so that snapshots built for the previous world are discarded.
+     * Only changed while holding the lock of {@link #snapshots}.
+     */
+    public int worldGeneration;
+
+    /** Amount of packets received from this connection that are waiting to be handled. */
+    public final AtomicInteger queuedPackets = new AtomicInteger();
+    /** Highest amount of packets received from this connection that were waiting to be handled at once. */
+    public volatile int maxQueuedPackets;
+    /** Amount of packets received from this connection that were dropped, as too many of its packets were waiting. */
+    public volatile int droppedPackets;
+    /** Whether this connection has been kicked for having too many packets waiting. */
+    public volatile boolean flooded;
+
+    /** Reliable invokes waiting to be sent together, and the amount of them. */
+    private final ByteBuffer batch = ByteBuffer.allocate(maxBatchSize);
+    private int batchAmount;
+    private final Runnable flushTask = this::flush;
+
     public NetConnection(String address){
         this.address = address;
     }
@@ -36,6 +71,7 @@ public abstract class NetConnection{
             PlayerInfo info = netServer.admins.getInfo(player.uuid);
             info.timesKicked++;
             info.lastKicked = Math.max(Time.millis(), info.lastKicked);
+            netServer.admins.changed(info);
         }
 
         Call.onKick(this, reason);
@@ -72,7 +108,58 @@ public abstract class NetConnection{
         }
     }
 
-    public abstract void send(Object object, SendMode mode);
+    /**
+     * Sends an object to this connection. Safe to call from any thread.
+     * Reliable remote invokes are batched, and sent in one packet at the start of the next frame or once the batch is full.
+     * Other reliable packets flush the batch first, so they stay in order; unreliable packets were never ordered and are sent right away.
+     */
+    public void send(Object object, SendMode mode){
+        if(mode == SendMode.tcp && object instanceof InvokePacket){
+            InvokePacket invoke = (InvokePacket)object;
+            //type, priority, length and data
+            int size = invoke.writeLength + 4;
+
+            synchronized(batch){
+                if(batch.remaining() < size){
+                    flush();
+                }
+
+                if(batch.remaining() >= size){
+                    invoke.write(batch);
+                    if(batchAmount++ == 0){
+                        Core.app.post(flushTask);
+                    }
+                    return;
+                }
+            }
+            //too large to batch, the batch is already flushed
+        }else if(mode == SendMode.tcp){
+            flush();
+        }
+
+        sendDirect(object, mode);
+    }
+
+    /** Sends all batched invokes now. */
+    public void flush(){
+        synchronized(batch){
+            if(batchAmount == 0) return;
+
+            InvokeBatch packet = PacketPool.obtain(InvokeBatch.class);
+            packet.writeBuffer = batch;
+            packet.writeLength = batch.position();
+            packet.amount = batchAmount;
+
+            batch.position(0);
+            batchAmount = 0;
+
+            sendDirect(packet, SendMode.tcp);
+            PacketPool.free(packet);
+        }
+    }
+
+    /** Sends an object to this connection without batching it. */
+    protected abstract void sendDirect(Object object, SendMode mode);
 
     public abstract void close();
 }
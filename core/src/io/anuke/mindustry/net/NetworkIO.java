@@ -2,6 +2,7 @@ package io.anuke.mindustry.net;
 
 import io.anuke.arc.*;
 import io.anuke.arc.util.*;
+import io.anuke.arc.util.io.*;
 import io.anuke.mindustry.entities.type.*;
 import io.anuke.mindustry.game.*;
 import io.anuke.mindustry.io.*;
@@ -10,24 +11,34 @@ import io.anuke.mindustry.maps.Map;
 import java.io.*;
 import java.nio.*;
 import java.util.*;
+import java.util.zip.*;
 
 import static io.anuke.mindustry.Vars.*;
 
 public class NetworkIO{
 
-    public static void writeWorld(Player player, OutputStream os){
+    /** Writes the world for a joining player. The map is written from a cache shared by all players; only the header is written per player. */
+    public static void writeWorld(Player player, WorldStreamCache cache, OutputStream os){
 
         try(DataOutputStream stream = new DataOutputStream(os)){
-            stream.writeUTF(JsonIO.write(state.rules));
-            SaveIO.getSaveWriter().writeStringMap(stream, world.getMap().tags);
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
 
-            stream.writeInt(state.wave);
-            stream.writeFloat(state.wavetime);
+            try(DataOutputStream out = new DataOutputStream(new FastDeflaterOutputStream(header))){
+                out.writeUTF(JsonIO.write(state.rules));
+                SaveIO.getSaveWriter().writeStringMap(out, world.getMap().tags);
 
-            stream.writeInt(player.id);
-            player.write(stream);
+                out.writeInt(state.wave);
+                out.writeFloat(state.wavetime);
 
-            SaveIO.getSaveWriter().writeMap(stream);
+                out.writeInt(player.id);
+                player.write(out);
+            }
+
+            stream.writeInt(header.size());
+            header.writeTo(stream);
+
+            cache.write(stream);
+            surface.write(stream);
         }catch(IOException e){
             throw new RuntimeException(e);
         }
@@ -35,7 +46,11 @@ public class NetworkIO{
 
     public static void loadWorld(InputStream is){
 
-        try(DataInputStream stream = new DataInputStream(is)){
+        try(DataInputStream input = new DataInputStream(is)){
+            byte[] header = new byte[input.readInt()];
+            input.readFully(header);
+            DataInputStream stream = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(header)));
+
             Time.clear();
             state.rules = JsonIO.read(Rules.class, stream.readUTF());
             world.setMap(new Map(SaveIO.getSaveWriter().readStringMap(stream)));
@@ -50,7 +65,8 @@ public class NetworkIO{
             player.resetID(id);
             player.add();
 
-            SaveIO.getSaveWriter().readMap(stream, world.context);
+            WorldStreamCache.read(input, world.context);
+            surface.read(input);
         }catch(IOException e){
             throw new RuntimeException(e);
         }
@@ -0,0 +1,56 @@
+package io.anuke.mindustry.net;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Lock-free pools of packets, one per registered type.
+ * Received packets are obtained on the network thread and freed on the logic thread, and remote calls may be sent from any thread,
+ * so the shared {@link io.anuke.arc.util.pooling.Pools} can't be used for them.
+ */
+@SuppressWarnings("unchecked")
+public class PacketPool{
+    /** Maximum amount of free packets kept of each type. */
+    private static final int max = 512;
+
+    private static final ConcurrentLinkedQueue<Packet>[] free = new ConcurrentLinkedQueue[Registrator.getClasses().length];
+    private static final AtomicIntegerArray sizes = new AtomicIntegerArray(free.length);
+
+    static{
+        for(int i = 0; i < free.length; i++){
+            free[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /** @return a free packet of the registered type with this ID, or a new one if there is none. Safe to call from any thread. */
+    public static Packet obtain(byte id){
+        Packet packet = free[id].poll();
+        if(packet == null){
+            return (Packet)Registrator.getByID(id).constructor.get();
+        }
+        sizes.decrementAndGet(id);
+        return packet;
+    }
+
+    /** @return a free packet of this registered type, or a new one if there is none. Safe to call from any thread. */
+    public static <T extends Packet> T obtain(Class<T> type){
+        return (T)obtain(Registrator.getID(type));
+    }
+
+    /** Resets a packet and returns it to its pool. Objects that aren't registered packets are ignored. Safe to call from any thread. */
+    public static void free(Object object){
+        if(!(object instanceof Packet)) return;
+
+        byte id = Registrator.getID(object.getClass());
+        if(id < 0) return;
+
+        if(sizes.incrementAndGet(id) > max){
+            sizes.decrementAndGet(id);
+            return;
+        }
+
+        Packet packet = (Packet)object;
+        packet.reset();
+        free[id].offer(packet);
+    }
+}
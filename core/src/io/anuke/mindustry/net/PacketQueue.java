@@ -0,0 +1,173 @@
+package io.anuke.mindustry.net;
+
+import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.*;
+import io.anuke.arc.function.*;
+import io.anuke.arc.util.*;
+import io.anuke.mindustry.net.Packets.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Preallocated ring buffer of received packets and their connections, filled by any amount of network threads and drained on the logic thread.
+ * Draining is posted to the logic thread at most once per frame, and handles at most {@link #budget()} packets; the rest wait for the next frame.
+ * Adding never blocks: when the ring is full, packets go to an unbounded overflow queue, which keeps them in order.
+ * Memory is bounded instead by dropping the packets of a connection that has {@link #connectionLimit} packets waiting, and kicking it.
+ */
+public class PacketQueue{
+    /** Maximum amount of packets of one connection that can wait to be handled. Disconnects are always accepted. */
+    public static final int connectionLimit = 512;
+
+    private final int capacity, mask;
+    private final NetConnection[] connections;
+    private final Object[] packets;
+    /** Sequence number of each slot: equal to the claiming position when free, that position + 1 when filled. */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final BiConsumer<NetConnection, Object> handler;
+    private final Runnable drainTask = this::drain;
+    /** Packets that didn't fit in the ring. While this isn't empty, new packets are added here too. */
+    private final ConcurrentLinkedQueue<Overflow> overflow = new ConcurrentLinkedQueue<>();
+    /** Position of the next packet to handle. Only accessed on the logic thread. */
+    private long head;
+
+    public PacketQueue(int capacity, BiConsumer<NetConnection, Object> handler){
+        //round up to a power of two, so positions can be masked into slots
+        this.capacity = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.handler = handler;
+        connections = new NetConnection[this.capacity];
+        packets = new Object[this.capacity];
+        sequences = new AtomicLongArray(this.capacity);
+        for(int i = 0; i < this.capacity; i++){
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Queues a packet to be handled on the logic thread. Safe to call from any thread, including the logic thread itself; never blocks.
+     * @return false if the packet was dropped, as its connection has too many packets waiting.
+     */
+    public boolean add(@Nullable NetConnection connection, Object packet){
+        if(connection != null){
+            if(!(packet instanceof Disconnect) && connection.queuedPackets.get() >= connectionLimit){
+                drop(connection, packet);
+                return false;
+            }
+
+            int queued = connection.queuedPackets.incrementAndGet();
+            if(queued > connection.maxQueuedPackets) connection.maxQueuedPackets = queued;
+        }
+
+        if(!overflow.isEmpty() || !offer(connection, packet)){
+            overflow.add(new Overflow(connection, packet));
+        }
+
+        if(!scheduled.getAndSet(true)){
+            Core.app.post(drainTask);
+        }
+        return true;
+    }
+
+    /** @return the maximum amount of packets handled per frame. */
+    protected int budget(){
+        return Integer.MAX_VALUE;
+    }
+
+    /** @return the amount of packets waiting to be handled. Call on the logic thread. */
+    public int size(){
+        return (int)Math.max(tail.get() - head, 0) + overflow.size();
+    }
+
+    private void drop(NetConnection connection, Object packet){
+        connection.droppedPackets++;
+        PacketPool.free(packet);
+
+        if(!connection.flooded){
+            connection.flooded = true;
+            Core.app.post(() -> {
+                Log.info("Connection {0} has more than {1} packets waiting, dropping it.", connection.address, connectionLimit);
+                connection.kick(KickReason.kick);
+            });
+        }
+    }
+
+    private boolean offer(NetConnection connection, Object packet){
+        long position = tail.get();
+        int index;
+
+        while(true){
+            index = (int)(position & mask);
+            long difference = sequences.get(index) - position;
+            if(difference == 0){
+                if(tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            }else if(difference < 0){
+                //slot still holds a packet from the previous lap
+                return false;
+            }else{
+                position = tail.get();
+            }
+        }
+
+        connections[index] = connection;
+        packets[index] = packet;
+        //publishes the entry to the logic thread
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    private void drain(){
+        int budget = budget(), handled = 0;
+
+        for(; handled < budget; handled++){
+            int index = (int)(head & mask);
+            //empty, or the next entry is claimed but not yet written
+            if(sequences.get(index) != head + 1) break;
+
+            NetConnection connection = connections[index];
+            Object packet = packets[index];
+            connections[index] = null;
+            packets[index] = null;
+            sequences.set(index, head + capacity);
+            head++;
+
+            handle(connection, packet);
+        }
+
+        //overflowing packets were all added after the ones in the ring
+        if(!hasNext()){
+            Overflow next;
+            for(; handled < budget && (next = overflow.poll()) != null; handled++){
+                handle(next.connection, next.packet);
+            }
+        }
+
+        scheduled.set(false);
+        //anything left over or added during the drain is handled next frame
+        if((hasNext() || !overflow.isEmpty()) && !scheduled.getAndSet(true)){
+            Core.app.post(drainTask);
+        }
+    }
+
+    private boolean hasNext(){
+        return sequences.get((int)(head & mask)) == head + 1;
+    }
+
+    private void handle(NetConnection connection, Object packet){
+        if(connection != null) connection.queuedPackets.decrementAndGet();
+        handler.accept(connection, packet);
+    }
+
+    private static class Overflow{
+        final NetConnection connection;
+        final Object packet;
+
+        Overflow(NetConnection connection, Object packet){
+            this.connection = connection;
+            this.packet = packet;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package io.anuke.mindustry.net;
 
 import io.anuke.arc.Core;
+import io.anuke.arc.collection.Array;
 import io.anuke.arc.util.serialization.Base64Coder;
 import io.anuke.mindustry.game.Version;
 import io.anuke.mindustry.io.TypeIO;
@@ -141,6 +142,39 @@ public class Packets{
         }
     }
 
+    /** Reliable remote invokes sent to a connection together. See {@link NetConnection#send}. */
+    public static class InvokeBatch implements Packet{
+        /** Invokes read from this batch, obtained from the {@link PacketPool}. */
+        public final Array<InvokePacket> invokes = new Array<>();
+
+        /** Buffer holding the written invokes, and the amount of them. */
+        public ByteBuffer writeBuffer;
+        public int writeLength, amount;
+
+        @Override
+        public void read(ByteBuffer buffer){
+            int amount = buffer.getShort();
+            for(int i = 0; i < amount; i++){
+                InvokePacket invoke = PacketPool.obtain(InvokePacket.class);
+                invoke.read(buffer);
+                invokes.add(invoke);
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer buffer){
+            buffer.putShort((short)amount);
+            buffer.put(writeBuffer.array(), 0, writeLength);
+        }
+
+        @Override
+        public void reset(){
+            invokes.clear();
+            writeBuffer = null;
+            writeLength = amount = 0;
+        }
+    }
+
     /** Marks the beginning of a stream. */
     public static class StreamBegin implements Packet{
         private static int lastid;
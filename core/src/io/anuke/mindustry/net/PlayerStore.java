@@ -0,0 +1,307 @@
+package io.anuke.mindustry.net;
+
+import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.collection.*;
+import io.anuke.arc.files.*;
+import io.anuke.arc.util.*;
+import io.anuke.mindustry.net.Administration.*;
+
+import java.io.*;
+
+/**
+ * Append-only log of player info and IP bans, indexed by UUID, IP and name.
+ * Changed records are appended on {@link #flush()}, and later records replace earlier ones when the log is read.
+ * The log is rewritten with only its latest records when it is loaded while holding too many outdated ones, or when it can't be read fully;
+ * in the latter case the damaged log is first copied to a backup file.
+ * The IP and name indexes only ever grow, so lookups must still check the fields of the info they find.
+ */
+public class PlayerStore{
+    private static final int logVersion = 1;
+    private static final byte recordInfo = 0, recordIP = 1;
+
+    private final FileHandle file;
+    private final ObjectMap<String, PlayerInfo> infos = new ObjectMap<>();
+    private final ObjectMap<String, Array<PlayerInfo>> ips = new ObjectMap<>(), names = new ObjectMap<>();
+    private final ObjectSet<String> bannedIPs = new ObjectSet<>();
+
+    /** Info and banned IPs that have changed since the last flush. */
+    private final ObjectSet<PlayerInfo> changedInfos = new ObjectSet<>();
+    private final ObjectSet<String> changedIPs = new ObjectSet<>();
+    /** Amount of records in the log, including outdated ones. */
+    private int records;
+
+    public PlayerStore(FileHandle file){
+        this.file = file;
+    }
+
+    /** @return whether the log has been written to disk. */
+    public boolean isStored(){
+        return file.exists();
+    }
+
+    public @Nullable PlayerInfo get(String id){
+        return infos.get(id);
+    }
+
+    /** Adds and indexes new info. Not written to disk until {@link #flush()} is called. */
+    public void add(PlayerInfo info){
+        infos.put(info.id, info);
+        changed(info);
+    }
+
+    /** @return every info that has ever had this IP, in no particular order. */
+    public Array<PlayerInfo> withIP(String ip){
+        Array<PlayerInfo> result = new Array<>();
+        Array<PlayerInfo> found = ips.get(ip);
+        if(found != null){
+            for(PlayerInfo info : found){
+                if(info.ips.contains(ip, false)) result.add(info);
+            }
+        }
+        return result;
+    }
+
+    /** @return an info that has had this IP, or null if there is none. */
+    public @Nullable PlayerInfo firstWithIP(String ip){
+        Array<PlayerInfo> found = ips.get(ip);
+        if(found != null){
+            for(PlayerInfo info : found){
+                if(info.ips.contains(ip, false)) return info;
+            }
+        }
+        return null;
+    }
+
+    /** @return info that has had this name at some point, ignoring case. Names must still be compared to the fields of each result. */
+    public Array<PlayerInfo> withNameCandidates(String name){
+        Array<PlayerInfo> found = names.get(name.toLowerCase());
+        return found == null ? new Array<>() : found;
+    }
+
+    public Iterable<PlayerInfo> all(){
+        return infos.values();
+    }
+
+    public boolean isBanned(String ip){
+        return bannedIPs.contains(ip);
+    }
+
+    /** @return whether the ban state of this IP changed. */
+    public boolean setBanned(String ip, boolean banned){
+        if((banned ? bannedIPs.add(ip) : bannedIPs.remove(ip))){
+            changedIPs.add(ip);
+            return true;
+        }
+        return false;
+    }
+
+    public Array<String> getBannedIPs(){
+        Array<String> result = new Array<>();
+        for(String ip : bannedIPs){
+            result.add(ip);
+        }
+        return result;
+    }
+
+    /** Indexes info again and marks it as changed, so that it is written on the next flush. Call after modifying it. */
+    public void changed(PlayerInfo info){
+        changedInfos.add(info);
+        index(info);
+    }
+
+    /** Appends all changed records to the log. */
+    public void flush(){
+        if(changedInfos.isEmpty() && changedIPs.isEmpty()) return;
+
+        boolean header = !file.exists() || file.length() == 0;
+
+        try(DataOutputStream stream = new DataOutputStream(file.write(true, 8192))){
+            if(header){
+                stream.writeInt(logVersion);
+            }
+
+            for(PlayerInfo info : changedInfos){
+                writeInfo(stream, info);
+            }
+
+            for(String ip : changedIPs){
+                writeIP(stream, ip);
+            }
+        }catch(IOException e){
+            Log.err("Failed to write player info.");
+            Log.err(e);
+        }
+
+        changedInfos.clear();
+        changedIPs.clear();
+    }
+
+    /** Reads the log, or imports the legacy info and bans if there is no log yet. */
+    public void load(ObjectMap<String, PlayerInfo> legacyInfo, Array<String> legacyBans){
+        if(!file.exists()){
+            for(PlayerInfo info : legacyInfo.values()){
+                infos.put(info.id, info);
+            }
+            bannedIPs.addAll(legacyBans);
+            indexAll();
+            compact();
+            return;
+        }
+
+        //records after a damaged one can't be trusted, so everything read before it is kept and the rest is dropped when compacting
+        boolean damaged = true;
+
+        try(DataInputStream stream = new DataInputStream(file.read(8192))){
+            int version = stream.readInt();
+            if(version != logVersion){
+                throw new IOException("Unknown player log version: " + version);
+            }
+
+            while(true){
+                int type = stream.read();
+                if(type == -1) break;
+
+                if(type == recordInfo){
+                    PlayerInfo info = readInfo(stream);
+                    infos.put(info.id, info);
+                }else if(type == recordIP){
+                    String ip = stream.readUTF();
+                    if(stream.readBoolean()){
+                        bannedIPs.add(ip);
+                    }else{
+                        bannedIPs.remove(ip);
+                    }
+                }else{
+                    throw new IOException("Unknown player log record: " + type);
+                }
+                records++;
+            }
+
+            damaged = false;
+        }catch(EOFException e){
+            //the last record was cut off by a crash
+            Log.err("Player log ends in an incomplete record.");
+        }catch(IOException e){
+            Log.err("Failed to read player log.");
+            Log.err(e);
+        }
+
+        indexAll();
+
+        if(damaged){
+            FileHandle backup = file.sibling(file.name() + ".bak");
+            Log.err("Keeping {0} readable records; the damaged log is copied to {1}.", records, backup.name());
+            file.copyTo(backup);
+            compact();
+        }else if(records > (infos.size + bannedIPs.size) * 2 + 1000){
+            compact();
+        }
+    }
+
+    /** Rewrites the log with only the latest record of each info and banned IP. */
+    private void compact(){
+        FileHandle temp = file.sibling(file.name() + ".tmp");
+
+        try(DataOutputStream stream = new DataOutputStream(temp.write(false, 8192))){
+            stream.writeInt(logVersion);
+            records = 0;
+
+            for(PlayerInfo info : infos.values()){
+                writeInfo(stream, info);
+            }
+
+            for(String ip : bannedIPs){
+                stream.writeByte(recordIP);
+                stream.writeUTF(ip);
+                stream.writeBoolean(true);
+                records++;
+            }
+        }catch(IOException e){
+            Log.err("Failed to compact player log.");
+            Log.err(e);
+            return;
+        }
+
+        temp.moveTo(file);
+    }
+
+    private void indexAll(){
+        for(PlayerInfo info : infos.values()){
+            index(info);
+        }
+    }
+
+    private void index(PlayerInfo info){
+        for(String ip : info.ips){
+            add(ips, ip, info);
+        }
+        for(String name : info.names){
+            add(names, name.toLowerCase(), info);
+        }
+        add(names, info.lastName.toLowerCase(), info);
+    }
+
+    private static void add(ObjectMap<String, Array<PlayerInfo>> index, String key, PlayerInfo info){
+        Array<PlayerInfo> array = index.get(key);
+        if(array == null){
+            index.put(key, array = new Array<>(false, 1));
+        }
+        if(!array.contains(info, true)){
+            array.add(info);
+        }
+    }
+
+    private void writeInfo(DataOutputStream stream, PlayerInfo info) throws IOException{
+        stream.writeByte(recordInfo);
+        stream.writeUTF(info.id);
+        stream.writeUTF(info.lastName);
+        stream.writeUTF(info.lastIP);
+        writeStrings(stream, info.ips);
+        writeStrings(stream, info.names);
+        stream.writeBoolean(info.adminUsid != null);
+        if(info.adminUsid != null) stream.writeUTF(info.adminUsid);
+        stream.writeInt(info.timesKicked);
+        stream.writeInt(info.timesJoined);
+        stream.writeBoolean(info.banned);
+        stream.writeBoolean(info.admin);
+        stream.writeLong(info.lastKicked);
+        records++;
+    }
+
+    private PlayerInfo readInfo(DataInputStream stream) throws IOException{
+        PlayerInfo info = new PlayerInfo();
+        info.id = stream.readUTF();
+        info.lastName = stream.readUTF();
+        info.lastIP = stream.readUTF();
+        readStrings(stream, info.ips);
+        readStrings(stream, info.names);
+        info.adminUsid = stream.readBoolean() ? stream.readUTF() : null;
+        info.timesKicked = stream.readInt();
+        info.timesJoined = stream.readInt();
+        info.banned = stream.readBoolean();
+        info.admin = stream.readBoolean();
+        info.lastKicked = stream.readLong();
+        return info;
+    }
+
+    private void writeIP(DataOutputStream stream, String ip) throws IOException{
+        stream.writeByte(recordIP);
+        stream.writeUTF(ip);
+        stream.writeBoolean(bannedIPs.contains(ip));
+        records++;
+    }
+
+    private static void writeStrings(DataOutputStream stream, Array<String> strings) throws IOException{
+        stream.writeShort(strings.size);
+        for(String string : strings){
+            stream.writeUTF(string);
+        }
+    }
+
+    private static void readStrings(DataInputStream stream, Array<String> out) throws IOException{
+        int amount = stream.readUnsignedShort();
+        for(int i = 0; i < amount; i++){
+            out.add(stream.readUTF());
+        }
+    }
+}
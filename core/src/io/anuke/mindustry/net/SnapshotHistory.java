@@ -0,0 +1,98 @@
+package io.anuke.mindustry.net;
+
+import io.anuke.annotations.Annotations.*;
+import io.anuke.arc.collection.*;
+
+import java.util.*;
+
+/**
+ * Ring buffer of recent entity snapshots, storing the sync data of every entity in each one.
+ * The server keeps one per connection and the client keeps one for the server; both sides use
+ * snapshots the client has fully received as baselines for delta-encoding entity sync data.
+ */
+@SuppressWarnings("unchecked")
+public class SnapshotHistory{
+    /** Amount of snapshots kept. Baselines older than this are discarded and entities are sent in full again. */
+    public static final int capacity = 32;
+
+    /** Entity was written in full. */
+    public static final byte modeFull = 0;
+    /** Entity was written as a XOR against its data in the baseline snapshot. */
+    public static final byte modeDelta = 1;
+    /** Entity has not changed since the baseline snapshot. */
+    public static final byte modeUnchanged = 2;
+
+    private final int[] ids = new int[capacity];
+    private final int[] chunks = new int[capacity], totals = new int[capacity];
+    private final boolean[] broken = new boolean[capacity];
+    private final IntMap<byte[]>[] entities = new IntMap[capacity];
+
+    public SnapshotHistory(){
+        for(int i = 0; i < capacity; i++){
+            entities[i] = new IntMap<>();
+        }
+        clear();
+    }
+
+    /** @return entity data of this snapshot, recycling the slot of an older snapshot if needed. */
+    public IntMap<byte[]> obtain(int id){
+        int index = index(id);
+        if(ids[index] != id){
+            ids[index] = id;
+            entities[index].clear();
+            chunks[index] = 0;
+            totals[index] = -1;
+            broken[index] = false;
+        }
+        return entities[index];
+    }
+
+    /** @return entity data of this snapshot, or null if it is not stored anymore. */
+    public @Nullable IntMap<byte[]> get(int id){
+        if(id < 0) return null;
+        int index = index(id);
+        return ids[index] == id && !broken[index] ? entities[index] : null;
+    }
+
+    /** @return whether this snapshot is older than every snapshot that is still stored, so that its slot has been reused. */
+    public boolean isStale(int id){
+        return id < 0 || ids[index(id)] > id;
+    }
+
+    /** Records that an entity chunk of this snapshot was received. @return whether the snapshot is now complete. */
+    public boolean addChunk(int id){
+        obtain(id);
+        chunks[index(id)]++;
+        return isComplete(id);
+    }
+
+    /** Sets the total amount of entity chunks in this snapshot. @return whether the snapshot is now complete. */
+    public boolean setTotalChunks(int id, int total){
+        obtain(id);
+        totals[index(id)] = total;
+        return isComplete(id);
+    }
+
+    /** @return whether every chunk of this snapshot was received and could be decoded. */
+    public boolean isComplete(int id){
+        int index = index(id);
+        return ids[index] == id && !broken[index] && totals[index] == chunks[index];
+    }
+
+    /** Marks a snapshot as unusable as a baseline, because some of its entities could not be decoded. */
+    public void invalidate(int id){
+        obtain(id);
+        broken[index(id)] = true;
+    }
+
+    public void clear(){
+        Arrays.fill(ids, -1);
+        for(IntMap<byte[]> map : entities){
+            map.clear();
+        }
+    }
+
+    private int index(int id){
+        return id % capacity;
+    }
+}
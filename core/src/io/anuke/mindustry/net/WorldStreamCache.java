@@ -0,0 +1,167 @@
+package io.anuke.mindustry.net;
+
+import io.anuke.arc.*;
+import io.anuke.arc.collection.*;
+import io.anuke.arc.util.io.*;
+import io.anuke.mindustry.entities.type.*;
+import io.anuke.mindustry.io.*;
+import io.anuke.mindustry.world.*;
+
+import java.io.*;
+import java.util.zip.*;
+
+import static io.anuke.mindustry.Vars.world;
+
+/**
+ * Compressed map data sent to joining players, split into regions of {@link #regionRows} rows each.
+ * Floors of every region are encoded once per world. Blocks of a region are encoded again when a tile in it changes,
+ * or when one of its tile entities has changed since the region was encoded, as tracked by {@link TileEntity#changedSince(long)}.
+ */
+@SuppressWarnings("unchecked")
+public class WorldStreamCache{
+    /** Amount of tile rows in each region. */
+    public static final int regionRows = 16;
+
+    private int width, height, regions;
+    private byte[][] floors = {}, blocks = {};
+    /** Tile entities of each region when its blocks were encoded. */
+    private Array<TileEntity>[] entities = new Array[0];
+    /** Frame in which the blocks of each region were encoded. */
+    private long[] frames = {};
+    /** Amount of block regions encoded by the last call to {@link #write(DataOutputStream)}. This value is only used for debugging. */
+    public int encodedRegions;
+
+    private final ReusableByteOutStream byteStream = new ReusableByteOutStream();
+
+    /** Discards all cached data. Called when a new world is loaded. */
+    public void reset(){
+        width = height = regions = 0;
+        entities = new Array[0];
+    }
+
+    /** Marks the region containing this tile as changed. */
+    public void invalidate(Tile tile){
+        int region = tile.y / regionRows;
+        if(region < regions && tile.x < width){
+            blocks[region] = null;
+        }
+    }
+
+    /** Writes the map data of every region, encoding only regions that have changed. */
+    public void write(DataOutputStream stream) throws IOException{
+        if(width != world.width() || height != world.height()){
+            resize();
+        }
+
+        stream.writeShort(width);
+        stream.writeShort(height);
+        stream.writeShort(regionRows);
+
+        for(int i = 0; i < regions; i++){
+            if(floors[i] == null){
+                floors[i] = encode(i, true);
+            }
+            writeRegion(stream, floors[i]);
+        }
+
+        long frame = Core.graphics.getFrameId();
+        encodedRegions = 0;
+
+        for(int i = 0; i < regions; i++){
+            if(blocks[i] == null || changed(i)){
+                blocks[i] = encode(i, false);
+                frames[i] = frame;
+                encodedRegions++;
+            }
+            writeRegion(stream, blocks[i]);
+        }
+    }
+
+    /** Reads map data written by {@link #write(DataOutputStream)} into the world. */
+    public static void read(DataInputStream stream, WorldContext context) throws IOException{
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int rows = stream.readUnsignedShort();
+        int regions = (height + rows - 1) / rows;
+        SaveVersion version = SaveIO.getSaveWriter();
+
+        boolean generating = context.isGenerating();
+
+        if(!generating) context.begin();
+        try{
+            context.resize(width, height);
+
+            //all tiles need to exist before any block is placed, as multiblocks can span regions
+            for(int i = 0; i < regions; i++){
+                int start = i * rows * width, end = Math.min((i + 1) * rows, height) * width;
+                version.readFloors(readRegion(stream), context, width, start, end);
+            }
+
+            for(int i = 0; i < regions; i++){
+                int start = i * rows * width, end = Math.min((i + 1) * rows, height) * width;
+                version.readBlocks(readRegion(stream), context, width, start, end);
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
+
+    private void resize(){
+        width = world.width();
+        height = world.height();
+        regions = (height + regionRows - 1) / regionRows;
+        floors = new byte[regions][];
+        blocks = new byte[regions][];
+        entities = new Array[regions];
+        frames = new long[regions];
+        for(int i = 0; i < regions; i++){
+            entities[i] = new Array<>(false, 16);
+        }
+    }
+
+    /** @return whether any tile entity of this region has changed since the region was encoded. */
+    private boolean changed(int region){
+        Array<TileEntity> array = entities[region];
+        for(int i = 0; i < array.size; i++){
+            if(array.get(i).changedSince(frames[region])) return true;
+        }
+        return false;
+    }
+
+    private byte[] encode(int region, boolean floor) throws IOException{
+        int start = region * regionRows * width, end = Math.min((region + 1) * regionRows, height) * width;
+
+        byteStream.reset();
+        try(DataOutputStream output = new DataOutputStream(new FastDeflaterOutputStream(byteStream))){
+            if(floor){
+                SaveIO.getSaveWriter().writeFloors(output, start, end);
+            }else{
+                SaveIO.getSaveWriter().writeBlocks(output, start, end);
+            }
+        }
+
+        if(!floor){
+            Array<TileEntity> array = entities[region];
+            array.clear();
+            for(int i = start; i < end; i++){
+                Tile tile = world.rawTile(i % width, i / width);
+                if(tile.entity != null && tile.entity.tile == tile){
+                    array.add(tile.entity);
+                }
+            }
+        }
+
+        return byteStream.toByteArray();
+    }
+
+    private static void writeRegion(DataOutputStream stream, byte[] bytes) throws IOException{
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+
+    private static DataInputStream readRegion(DataInputStream stream) throws IOException{
+        byte[] bytes = new byte[stream.readInt()];
+        stream.readFully(bytes);
+        return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -189,6 +189,7 @@ public class Block extends BlockStorage{
             Tile other = world.tile(tile.entity.power.links.get(i));
             if(other != null && other.entity != null && other.entity.power != null){
                 other.entity.power.links.removeValue(tile.pos());
+                other.entity.power.markChanged();
             }
         }
     }
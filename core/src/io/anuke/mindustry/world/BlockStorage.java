@@ -88,6 +88,7 @@ public abstract class BlockStorage extends UnlockableContent{
 
     public void handleItem(Item item, Tile tile, Tile source){
         tile.entity.items.add(item, 1);
+        tile.entity.wake(TileEntity.wakeItems);
     }
 
     public boolean acceptItem(Item item, Tile tile, Tile source){
@@ -100,6 +101,7 @@ public abstract class BlockStorage extends UnlockableContent{
 
     public void handleLiquid(Tile tile, Tile source, Liquid liquid, float amount){
         tile.entity.liquids.add(liquid, amount);
+        tile.entity.wake(TileEntity.wakeLiquids);
     }
 
     public void tryDumpLiquid(Tile tile, Liquid liquid){
@@ -368,6 +368,7 @@ public class Tile implements Position, TargetTrait{
 
     protected void changed(){
         if(entity != null){
+            entity.clearSleep();
             entity.remove();
             entity = null;
         }
@@ -38,6 +38,7 @@ public class Door extends Wall{
         DoorEntity entity = tile.entity();
         if(entity != null){
             entity.open = open;
+            entity.markChanged();
             Door door = (Door)tile.block();
 
             pathfinder.updateSolid(tile);
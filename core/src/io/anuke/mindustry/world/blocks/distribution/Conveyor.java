@@ -15,15 +15,15 @@ import io.anuke.mindustry.world.*;
 import io.anuke.mindustry.world.meta.*;
 
 import java.io.*;
+import java.util.*;
 
 import static io.anuke.mindustry.Vars.*;
 
 public class Conveyor extends Block{
     private static final float ITEM_SPACE = 0.4f;
-    private static final float minmove = 1f / (Short.MAX_VALUE - 2);
-    private static ItemPos drawpos = new ItemPos();
-    private static ItemPos pos1 = new ItemPos();
-    private static ItemPos pos2 = new ItemPos();
+    /** Scale of fixed-point item positions; an item at the front of the conveyor is at this position. */
+    private static final int fixedScale = 1 << 16;
+    private static final int itemSpace = fixed(ITEM_SPACE), offloadPosition = fixed(0.9999f), sideSpace = fixed(0.52f);
     private final Vector2 tr1 = new Vector2();
     private final Vector2 tr2 = new Vector2();
 
@@ -45,10 +45,8 @@ public class Conveyor extends Block{
         unloadable = false;
     }
 
-    private static int compareItems(long a, long b){
-        pos1.set(a, ItemPos.packShorts);
-        pos2.set(b, ItemPos.packShorts);
-        return Float.compare(pos1.y, pos2.y);
+    private static int fixed(float position){
+        return (int)(position * fixedScale);
     }
 
     @Override
@@ -89,6 +87,13 @@ public class Conveyor extends Block{
         super.onProximityUpdate(tile);
 
         ConveyorEntity entity = tile.entity();
+
+        //the line this conveyor is part of may have been split or joined with another
+        if(entity.segment != null){
+            entity.segment.release();
+        }
+        entity.noSleep();
+
         entity.blendbits = 0;
         entity.blendsclx = entity.blendscly = 1;
 
@@ -151,23 +156,15 @@ public class Conveyor extends Block{
 
         byte rotation = tile.rotation();
 
-        try{
-
-            for(int i = 0; i < entity.convey.size; i++){
-                ItemPos pos = drawpos.set(entity.convey.get(i), ItemPos.drawShorts);
-
-                if(pos.item == null) continue;
+        for(int i = 0; i < entity.len; i++){
+            float y = entity.ys[i] / (float)fixedScale;
 
-                tr1.trns(rotation * 90, tilesize, 0);
-                tr2.trns(rotation * 90, -tilesize / 2f, pos.x * tilesize / 2f);
+            tr1.trns(rotation * 90, tilesize, 0);
+            tr2.trns(rotation * 90, -tilesize / 2f, entity.xs[i] * tilesize / 2f);
 
-                Draw.rect(pos.item.icon(Item.Icon.medium),
-                (tile.x * tilesize + tr1.x * pos.y + tr2.x),
-                (tile.y * tilesize + tr1.y * pos.y + tr2.y), itemSize, itemSize);
-            }
-
-        }catch(IndexOutOfBoundsException e){
-            Log.err(e);
+            Draw.rect(entity.ids[i].icon(Item.Icon.medium),
+            (tile.x * tilesize + tr1.x * y + tr2.x),
+            (tile.y * tilesize + tr1.y * y + tr2.y), itemSize, itemSize);
         }
     }
 
@@ -196,7 +193,7 @@ public class Conveyor extends Block{
             if(Math.abs(tile.worldx() - unit.x) < 1f) centerx = 0f;
         }
 
-        if(entity.convey.size * ITEM_SPACE < 0.9f){
+        if(entity.len * ITEM_SPACE < 0.9f){
             unit.applyImpulse((tx * speed + centerx) * entity.delta(), (ty * speed + centery) * entity.delta());
         }
     }
@@ -204,71 +201,137 @@ public class Conveyor extends Block{
     @Override
     public void update(Tile tile){
         ConveyorEntity entity = tile.entity();
-        entity.minitem = 1f;
-        Tile next = tile.getNearby(tile.rotation());
-        if(next != null) next = next.link();
+        if(entity.segment == null){
+            buildSegment(tile);
+        }
 
-        float nextMax = next != null && next.block() instanceof Conveyor ? 1f - Math.max(ITEM_SPACE - next.<ConveyorEntity>entity().minitem, 0) : 1f;
-        int minremove = Integer.MAX_VALUE;
+        Array<Tile> tiles = entity.segment.tiles;
 
-        for(int i = entity.convey.size - 1; i >= 0; i--){
-            long value = entity.convey.get(i);
-            ItemPos pos = pos1.set(value, ItemPos.updateShorts);
+        //only the front tile of a segment updates, stepping every tile behind it as well
+        if(tiles.first() != tile){
+            entity.sleep();
+            return;
+        }
 
-            //..this should never happen, but in case it does, remove it and stop here
-            if(pos.item == null){
-                entity.convey.removeValue(value);
-                break;
-            }
+        int total = 0;
+        for(int i = 0; i < tiles.size; i++){
+            Tile current = tiles.get(i);
+            total += step(current, current.entity(), i == 0 ? null : tiles.get(i - 1));
+        }
+
+        if(total == 0){
+            entity.sleep();
+        }else{
+            entity.noSleep();
+        }
+    }
+
+    /**
+     * Moves the items of one conveyor.
+     * @param inLine the next conveyor in the same segment, which items are passed to directly. Null for the front of a segment.
+     * @return the amount of items left on the conveyor
+     */
+    private int step(Tile tile, ConveyorEntity entity, Tile inLine){
+        //sleeping conveyors don't run their own overdrive timer
+        if(entity.isSleeping()){
+            entity.timeScaleDuration -= Time.delta();
+            if(entity.timeScaleDuration <= 0f) entity.timeScale = 1f;
+        }
 
-            float nextpos = (i == entity.convey.size - 1 ? 100f : pos2.set(entity.convey.get(i + 1), ItemPos.updateShorts).y) - ITEM_SPACE;
-            float maxmove = Math.min(nextpos - pos.y, speed * entity.delta());
+        entity.minitem = fixedScale;
+        Tile next = inLine;
+        if(next == null){
+            next = tile.getNearby(tile.rotation());
+            if(next != null) next = next.link();
+        }
+
+        int nextMax = next != null && next.block() instanceof Conveyor ? fixedScale - Math.max(itemSpace - next.<ConveyorEntity>entity().minitem, 0) : fixedScale;
+        int move = fixed(speed * entity.delta());
+        int minremove = Integer.MAX_VALUE;
 
-            if(maxmove > minmove){
-                pos.y += maxmove;
-                if(Mathf.isEqual(pos.x, 0, 0.1f)){
-                    pos.x = 0f;
+        for(int i = entity.len - 1; i >= 0; i--){
+            int y = entity.ys[i];
+            float x = entity.xs[i];
+            Item item = entity.ids[i];
+
+            int nextpos = (i == entity.len - 1 ? fixed(100f) : entity.ys[i + 1]) - itemSpace;
+            int maxmove = Math.min(nextpos - y, move);
+
+            if(maxmove > 0){
+                y += maxmove;
+                if(Mathf.isEqual(x, 0, 0.1f)){
+                    x = 0f;
                 }
-                pos.x = Mathf.lerpDelta(pos.x, 0, 0.1f);
+                x = Mathf.lerpDelta(x, 0, 0.1f);
             }
 
-            pos.y = Mathf.clamp(pos.y, 0, nextMax);
+            y = Mathf.clamp(y, 0, nextMax);
 
-            if(pos.y >= 0.9999f && offloadDir(tile, pos.item)){
-                if(next != null && next.block() instanceof Conveyor){
+            if(y >= offloadPosition && (inLine == null ? offloadDir(tile, item) : pass(inLine, item, x))){
+                if(inLine == null && next != null && next.block() instanceof Conveyor){
                     ConveyorEntity othere = next.entity();
 
-                    ItemPos ni = pos2.set(othere.convey.get(othere.lastInserted), ItemPos.updateShorts);
-
                     if(next.rotation() == tile.rotation()){
-                        ni.x = pos.x;
+                        othere.xs[othere.lastInserted] = x;
                     }
-                    othere.convey.set(othere.lastInserted, ni.pack());
                 }
                 minremove = Math.min(i, minremove);
-                tile.entity.items.remove(pos.item, 1);
+                tile.entity.items.remove(item, 1);
             }else{
-                value = pos.pack();
-
-                if(pos.y < entity.minitem)
-                    entity.minitem = pos.y;
-                entity.convey.set(i, value);
+                if(y < entity.minitem)
+                    entity.minitem = y;
+                entity.ys[i] = y;
+                entity.xs[i] = x;
             }
         }
 
-        if(entity.minitem < ITEM_SPACE){
+        if(entity.minitem < itemSpace){
             entity.clogHeat = Mathf.lerpDelta(entity.clogHeat, 1f, 0.02f);
         }else{
             entity.clogHeat = Mathf.lerpDelta(entity.clogHeat, 0f, 1f);
         }
 
-        if(entity.items.total() == 0){
-            entity.sleep();
-        }else{
-            entity.noSleep();
+        if(minremove != Integer.MAX_VALUE) entity.len = minremove;
+
+        return entity.items.total();
+    }
+
+    /** Passes an item from the front of a conveyor to the back of the next one in its segment. */
+    private boolean pass(Tile next, Item item, float x){
+        ConveyorEntity other = next.entity();
+        if(other.minitem <= itemSpace) return false;
+
+        int index = 0;
+        while(index < other.len && other.ys[index] <= 0){
+            index++;
+        }
+
+        other.insert(index, item, x, 0);
+        other.lastInserted = (byte)index;
+        next.entity.items.add(item, 1);
+        return true;
+    }
+
+    /** Fuses the straight line of conveyors through this tile into one segment. */
+    private void buildSegment(Tile tile){
+        Tile front = tile;
+        for(Tile next = inLine(tile, 0); next != null; next = inLine(next, 0)){
+            front = next;
+        }
+
+        ConveyorSegment segment = new ConveyorSegment();
+        for(Tile current = front; current != null; current = inLine(current, 2)){
+            segment.tiles.add(current);
+            current.<ConveyorEntity>entity().segment = segment;
         }
 
-        if(minremove != Integer.MAX_VALUE) entity.convey.truncate(minremove);
+        front.entity.noSleep();
+    }
+
+    /** @return the conveyor in front of (direction 0) or behind (direction 2) this tile, if it is of the same type and faces the same way. */
+    private Tile inLine(Tile tile, int direction){
+        Tile other = tile.getNearby((tile.rotation() + direction) % 4);
+        return other != null && other.block() == this && other.entity != null && other.rotation() == tile.rotation() && other.getTeam() == tile.getTeam() ? other : null;
     }
 
     @Override
@@ -283,11 +346,9 @@ public class Conveyor extends Block{
         int removed = 0;
 
         for(int j = 0; j < amount; j++){
-            for(int i = 0; i < entity.convey.size; i++){
-                long val = entity.convey.get(i);
-                ItemPos pos = pos1.set(val, ItemPos.drawShorts);
-                if(pos.item == item){
-                    entity.convey.removeValue(val);
+            for(int i = 0; i < entity.len; i++){
+                if(entity.ids[i] == item){
+                    entity.remove(i);
                     entity.items.remove(item, 1);
                     removed++;
                     break;
@@ -305,7 +366,7 @@ public class Conveyor extends Block{
     @Override
     public int acceptStack(Item item, int amount, Tile tile, Unit source){
         ConveyorEntity entity = tile.entity();
-        return Math.min((int)(entity.minitem / ITEM_SPACE), amount);
+        return Math.min(entity.minitem / itemSpace, amount);
     }
 
     @Override
@@ -313,20 +374,19 @@ public class Conveyor extends Block{
         ConveyorEntity entity = tile.entity();
 
         for(int i = amount - 1; i >= 0; i--){
-            long result = ItemPos.packItem(item, 0f, i * ITEM_SPACE);
-            entity.convey.insert(0, result);
+            entity.insert(0, item, 0f, i * itemSpace);
             entity.items.add(item, 1);
         }
 
-        entity.noSleep();
+        entity.wake();
     }
 
     @Override
     public boolean acceptItem(Item item, Tile tile, Tile source){
         int direction = source == null ? 0 : Math.abs(source.relativeTo(tile.x, tile.y) - tile.rotation());
-        float minitem = tile.<ConveyorEntity>entity().minitem;
-        return (((direction == 0) && minitem > ITEM_SPACE) ||
-        ((direction % 2 == 1) && minitem > 0.52f)) && (source == null || !(source.block().rotate && (source.rotation() + 2) % 4 == tile.rotation()));
+        int minitem = tile.<ConveyorEntity>entity().minitem;
+        return (((direction == 0) && minitem > itemSpace) ||
+        ((direction % 2 == 1) && minitem > sideSpace)) && (source == null || !(source.block().rotate && (source.rotation() + 2) % 4 == tile.rotation()));
     }
 
     @Override
@@ -340,22 +400,22 @@ public class Conveyor extends Block{
         float y = (ang == -1 || ang == 3) ? 1 : (ang == 1 || ang == -3) ? -1 : 0;
 
         ConveyorEntity entity = tile.entity();
-        entity.noSleep();
-        long result = ItemPos.packItem(item, y * 0.9f, pos);
+        entity.wake();
+        int position = fixed(pos);
 
         tile.entity.items.add(item, 1);
 
-        for(int i = 0; i < entity.convey.size; i++){
-            if(compareItems(result, entity.convey.get(i)) < 0){
-                entity.convey.insert(i, result);
-                entity.lastInserted = (byte)i;
-                return;
+        //keep items ordered by position
+        int index = entity.len;
+        for(int i = 0; i < entity.len; i++){
+            if(position < entity.ys[i]){
+                index = i;
+                break;
             }
         }
 
-        //this item must be greater than anything there...
-        entity.convey.add(result);
-        entity.lastInserted = (byte)(entity.convey.size - 1);
+        entity.insert(index, item, y * 0.9f, position);
+        entity.lastInserted = (byte)index;
     }
 
     @Override
@@ -364,106 +424,97 @@ public class Conveyor extends Block{
     }
 
     public static class ConveyorEntity extends TileEntity{
-
-        LongArray convey = new LongArray();
+        /** Items on this conveyor, ordered from the back of the conveyor to the front. */
+        Item[] ids = new Item[4];
+        /** Fixed-point position of each item along the conveyor. */
+        int[] ys = new int[4];
+        /** Sideways offset of each item from the center of the conveyor, from -1 to 1. */
+        float[] xs = new float[4];
+        int len;
+        /** Line of conveyors this one is updated with. Null until the next update after its proximity changes. */
+        ConveyorSegment segment;
         byte lastInserted;
-        float minitem = 1;
+        int minitem = fixedScale;
 
         int blendbits;
         int blendsclx, blendscly;
 
         float clogHeat = 0f;
 
+        /** Wakes up this conveyor and the front of its segment, which updates it. */
+        void wake(){
+            noSleep();
+            if(segment != null){
+                segment.tiles.first().entity.noSleep();
+            }
+        }
+
+        void insert(int index, Item item, float x, int y){
+            if(len == ids.length){
+                ids = Arrays.copyOf(ids, len * 2);
+                ys = Arrays.copyOf(ys, len * 2);
+                xs = Arrays.copyOf(xs, len * 2);
+            }
+
+            System.arraycopy(ids, index, ids, index + 1, len - index);
+            System.arraycopy(ys, index, ys, index + 1, len - index);
+            System.arraycopy(xs, index, xs, index + 1, len - index);
+            ids[index] = item;
+            ys[index] = y;
+            xs[index] = x;
+            len++;
+        }
+
+        void remove(int index){
+            System.arraycopy(ids, index + 1, ids, index, len - index - 1);
+            System.arraycopy(ys, index + 1, ys, index, len - index - 1);
+            System.arraycopy(xs, index + 1, xs, index, len - index - 1);
+            len--;
+        }
+
         @Override
         public void write(DataOutput stream) throws IOException{
             super.write(stream);
-            stream.writeInt(convey.size);
+            stream.writeInt(len);
 
-            for(int i = 0; i < convey.size; i++){
-                stream.writeInt(ItemPos.toInt(convey.get(i)));
+            for(int i = 0; i < len; i++){
+                stream.writeInt(Pack.intBytes((byte)ids[i].id, (byte)(xs[i] * 127), (byte)(ys[i] / (float)fixedScale * 255 - 128), (byte)0));
             }
         }
 
         @Override
         public void read(DataInput stream, byte revision) throws IOException{
             super.read(stream, revision);
-            convey.clear();
+            len = 0;
             int amount = stream.readInt();
-            convey.ensureCapacity(Math.min(amount, 10));
+            //local, as entities may be read and written on different threads
+            byte[] values = new byte[4];
 
             for(int i = 0; i < amount; i++){
-                convey.add(ItemPos.toLong(stream.readInt()));
+                Pack.bytes(stream.readInt(), values);
+                Item item = values[0] >= 0 && values[0] < content.items().size ? content.items().get(values[0]) : null;
+
+                //items that no longer exist are dropped
+                if(item != null){
+                    insert(len, item, values[1] / 127f, fixed(((int)values[2] + 128) / 255f));
+                }
             }
         }
     }
 
-    //Container class. Do not instantiate.
-    static class ItemPos{
-        private static short[] writeShort = new short[4];
-        private static byte[] writeByte = new byte[4];
-
-        private static short[] packShorts = new short[4];
-        private static short[] drawShorts = new short[4];
-        private static short[] updateShorts = new short[4];
-
-        Item item;
-        float x, y;
-
-        private ItemPos(){
-        }
-
-        static long packItem(Item item, float x, float y){
-            short[] shorts = packShorts;
-            shorts[0] = (short)item.id;
-            shorts[1] = (short)(x * Short.MAX_VALUE);
-            shorts[2] = (short)((y - 1f) * Short.MAX_VALUE);
-            return Pack.longShorts(shorts);
-        }
-
-        static int toInt(long value){
-            short[] values = Pack.shorts(value, writeShort);
-
-            short itemid = values[0];
-            float x = values[1] / (float)Short.MAX_VALUE;
-            float y = ((float)values[2]) / Short.MAX_VALUE + 1f;
-
-            byte[] bytes = writeByte;
-            bytes[0] = (byte)itemid;
-            bytes[1] = (byte)(x * 127);
-            bytes[2] = (byte)(y * 255 - 128);
-
-            return Pack.intBytes(bytes);
-        }
-
-        static long toLong(int value){
-            byte[] values = Pack.bytes(value, writeByte);
-
-            byte itemid = values[0];
-            float x = values[1] / 127f;
-            float y = ((int)values[2] + 128) / 255f;
-
-            short[] shorts = writeShort;
-            shorts[0] = (short)itemid;
-            shorts[1] = (short)(x * Short.MAX_VALUE);
-            shorts[2] = (short)((y - 1f) * Short.MAX_VALUE);
-            return Pack.longShorts(shorts);
-        }
-
-        ItemPos set(long lvalue, short[] values){
-            Pack.shorts(lvalue, values);
-
-            if(values[0] >= content.items().size || values[0] < 0)
-                item = null;
-            else
-                item = content.items().get(values[0]);
-
-            x = values[1] / (float)Short.MAX_VALUE;
-            y = ((float)values[2]) / Short.MAX_VALUE + 1f;
-            return this;
-        }
-
-        long pack(){
-            return packItem(item, x, y);
+    /** A straight line of conveyors of the same type facing the same way, updated together by its front tile. */
+    static class ConveyorSegment{
+        /** Tiles of this segment, from the front to the back. */
+        final Array<Tile> tiles = new Array<>();
+
+        /** Detaches every tile from this segment and wakes it up, so that the line is fused again on its next update. */
+        void release(){
+            for(Tile tile : tiles){
+                if(tile.entity instanceof ConveyorEntity && ((ConveyorEntity)tile.entity).segment == this){
+                    ((ConveyorEntity)tile.entity).segment = null;
+                    tile.entity.noSleep();
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
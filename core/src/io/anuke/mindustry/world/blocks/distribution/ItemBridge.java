@@ -48,15 +48,19 @@ public class ItemBridge extends Block{
         ItemBridgeEntity oe = other.entity();
         entity.link = other.pos();
         oe.incoming.add(tile.pos());
+        entity.markChanged();
+        oe.markChanged();
     }
 
     @Remote(targets = Loc.both, called = Loc.server, forward = true)
     public static void unlinkItemBridge(Player player, Tile tile, Tile other){
         ItemBridgeEntity entity = tile.entity();
         entity.link = -1;
+        entity.markChanged();
         if(other != null){
             ItemBridgeEntity oe = other.entity();
             oe.incoming.remove(tile.pos());
+            oe.markChanged();
         }
     }
 
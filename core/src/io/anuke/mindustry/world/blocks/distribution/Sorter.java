@@ -44,6 +44,7 @@ public class Sorter extends Block{
         SorterEntity entity = tile.entity();
         if(entity != null){
             entity.sortItem = item;
+            entity.markChanged();
         }
     }
 
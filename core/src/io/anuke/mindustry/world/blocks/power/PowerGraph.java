@@ -5,18 +5,24 @@ import io.anuke.arc.collection.*;
 import io.anuke.arc.math.Mathf;
 import io.anuke.arc.math.WindowedMean;
 import io.anuke.arc.util.Time;
+import io.anuke.mindustry.entities.type.TileEntity;
 import io.anuke.mindustry.world.Tile;
-import io.anuke.mindustry.world.consumers.*;
+import io.anuke.mindustry.world.consumers.ConsumePower;
 
 public class PowerGraph{
     private final static Queue<Tile> QUEUE = new Queue<>();
     private final static Array<Tile> OUT_ARRAY_1 = new Array<>();
     private final static Array<Tile> OUT_ARRAY_2 = new Array<>();
     private final static IntSet CLOSED_SET = new IntSet();
-
-    private final ObjectSet<Tile> producers = new ObjectSet<>();
-    private final ObjectSet<Tile> consumers = new ObjectSet<>();
-    private final ObjectSet<Tile> batteries = new ObjectSet<>();
+    private final static Array<Tile> SEARCH_STARTS = new Array<>();
+    private final static Array<Queue<Tile>> SEARCH_QUEUES = new Array<>();
+    private final static Array<Array<Tile>> SEARCH_VISITED = new Array<>();
+    private final static IntIntMap SEARCH_OWNERS = new IntIntMap();
+    private static int[] searchParents = new int[8];
+
+    private final PowerMembers producers = new PowerMembers();
+    private final PowerMembers consumers = new PowerMembers();
+    private final PowerMembers batteries = new PowerMembers();
     private final ObjectSet<Tile> all = new ObjectSet<>();
 
     private final WindowedMean powerBalance = new WindowedMean(60);
@@ -57,7 +63,9 @@ public class PowerGraph{
 
     public float getPowerProduced(){
         float powerProduced = 0f;
-        for(Tile producer : producers){
+        Tile[] tiles = producers.tiles;
+        for(int i = 0; i < producers.size; i++){
+            Tile producer = tiles[i];
             if(producer.entity == null) continue;
             powerProduced += producer.block().getPowerProduction(producer) * producer.entity.delta();
         }
@@ -65,14 +73,19 @@ public class PowerGraph{
     }
 
     public float getPowerNeeded(){
+        consumers.updateValid();
+        return powerNeeded();
+    }
+
+    /** Sums up the power requested by consumers whose other requirements are met, as of the last validity check. */
+    private float powerNeeded(){
         float powerNeeded = 0f;
-        for(Tile consumer : consumers){
-            Consumers consumes = consumer.block().consumes;
-            if(consumes.hasPower()){
-                ConsumePower consumePower = consumes.getPower();
-                if(otherConsumersAreValid(consumer, consumePower)){
-                    powerNeeded += consumePower.requestedPower(consumer.entity) * consumer.entity.delta();
-                }
+        Tile[] tiles = consumers.tiles;
+        ConsumePower[] power = consumers.power;
+        boolean[] valid = consumers.valid;
+        for(int i = 0; i < consumers.size; i++){
+            if(power[i] != null && valid[i]){
+                powerNeeded += power[i].requestedPower(tiles[i].entity) * tiles[i].entity.delta();
             }
         }
         return powerNeeded;
@@ -80,24 +93,17 @@ public class PowerGraph{
 
     public float getBatteryStored(){
         float totalAccumulator = 0f;
-        for(Tile battery : batteries){
-            Consumers consumes = battery.block().consumes;
-            if(consumes.hasPower()){
-                totalAccumulator += battery.entity.power.satisfaction * consumes.getPower().capacity;
-            }
+        Tile[] tiles = batteries.tiles;
+        float[] capacity = batteries.capacity;
+        for(int i = 0; i < batteries.size; i++){
+            totalAccumulator += tiles[i].entity.power.satisfaction * capacity[i];
         }
         return totalAccumulator;
     }
 
     public float getBatteryCapacity(){
-        float totalCapacity = 0f;
-        for(Tile battery : batteries){
-            if(battery.block().consumes.hasPower()){
-                ConsumePower power = battery.block().consumes.getPower();
-                totalCapacity += (1f - battery.entity.power.satisfaction) * power.capacity;
-            }
-        }
-        return totalCapacity;
+        //total capacity is kept up to date as batteries are added and removed
+        return Math.max(batteries.totalCapacity - getBatteryStored(), 0f);
     }
 
     public float useBatteries(float needed){
@@ -106,10 +112,12 @@ public class PowerGraph{
 
         float used = Math.min(stored, needed);
         float consumedPowerPercentage = Math.min(1.0f, needed / stored);
-        for(Tile battery : batteries){
-            Consumers consumes = battery.block().consumes;
-            if(consumes.hasPower()){
-                battery.entity.power.satisfaction *= (1f-consumedPowerPercentage);
+        Tile[] tiles = batteries.tiles;
+        ConsumePower[] power = batteries.power;
+        for(int i = 0; i < batteries.size; i++){
+            if(power[i] != null){
+                tiles[i].entity.power.satisfaction *= (1f-consumedPowerPercentage);
+                tiles[i].entity.power.markChanged();
             }
         }
         return used;
@@ -121,54 +129,71 @@ public class PowerGraph{
         float chargedPercent = Math.min(excess/capacity, 1f);
         if(Mathf.isEqual(capacity, 0f)) return 0f;
 
-        for(Tile battery : batteries){
-            Consumers consumes = battery.block().consumes;
-            if(consumes.hasPower()){
-                ConsumePower consumePower = consumes.getPower();
-                if(consumePower.capacity > 0f){
-                    battery.entity.power.satisfaction += (1f-battery.entity.power.satisfaction) * chargedPercent;
-                }
+        Tile[] tiles = batteries.tiles;
+        float[] capacities = batteries.capacity;
+        for(int i = 0; i < batteries.size; i++){
+            if(capacities[i] > 0f){
+                tiles[i].entity.power.satisfaction += (1f-tiles[i].entity.power.satisfaction) * chargedPercent;
+                tiles[i].entity.power.markChanged();
             }
         }
         return Math.min(excess, capacity);
     }
 
     public void distributePower(float needed, float produced){
+        consumers.updateValid();
+        distribute(needed, produced);
+    }
+
+    /** Distributes power to consumers, using the results of the last validity check. */
+    private void distribute(float needed, float produced){
         //distribute even if not needed. this is because some might be requiring power but not using it; it updates consumers
         float coverage = Mathf.isZero(needed) && Mathf.isZero(produced) ? 0f : Mathf.isZero(needed) ? 1f : Math.min(1, produced / needed);
-        for(Tile consumer : consumers){
-            Consumers consumes = consumer.block().consumes;
-            if(consumes.hasPower()){
-                ConsumePower consumePower = consumes.getPower();
-                if(consumePower.buffered){
-                    if(!Mathf.isZero(consumePower.capacity)){
-                        // Add an equal percentage of power to all buffers, based on the global power coverage in this graph
-                        float maximumRate = consumePower.requestedPower(consumer.entity) * coverage * consumer.entity.delta();
-                        consumer.entity.power.satisfaction = Mathf.clamp(consumer.entity.power.satisfaction + maximumRate / consumePower.capacity);
-                    }
-                }else{
-                    //valid consumers get power as usual
-                    if(otherConsumersAreValid(consumer, consumePower)){
-                        consumer.entity.power.satisfaction = coverage;
-                    }else{ //invalid consumers get an estimate, if they were to activate
-                        consumer.entity.power.satisfaction = Math.min(1, produced / (needed + consumePower.usage * consumer.entity.delta()));
-                        //just in case
-                        if(Float.isNaN(consumer.entity.power.satisfaction)){
-                            consumer.entity.power.satisfaction = 0f;
-                        }
+        Tile[] tiles = consumers.tiles;
+        ConsumePower[] power = consumers.power;
+        boolean[] valid = consumers.valid;
+        for(int i = 0; i < consumers.size; i++){
+            ConsumePower consumePower = power[i];
+            if(consumePower == null) continue;
+
+            Tile consumer = tiles[i];
+            float previous = consumer.entity.power.satisfaction;
+            if(consumePower.buffered){
+                if(!Mathf.isZero(consumePower.capacity)){
+                    // Add an equal percentage of power to all buffers, based on the global power coverage in this graph
+                    float maximumRate = consumePower.requestedPower(consumer.entity) * coverage * consumer.entity.delta();
+                    consumer.entity.power.satisfaction = Mathf.clamp(consumer.entity.power.satisfaction + maximumRate / consumePower.capacity);
+                }
+            }else{
+                //valid consumers get power as usual
+                if(valid[i]){
+                    consumer.entity.power.satisfaction = coverage;
+                }else{ //invalid consumers get an estimate, if they were to activate
+                    consumer.entity.power.satisfaction = Math.min(1, produced / (needed + consumePower.usage * consumer.entity.delta()));
+                    //just in case
+                    if(Float.isNaN(consumer.entity.power.satisfaction)){
+                        consumer.entity.power.satisfaction = 0f;
                     }
                 }
             }
+
+            if(previous != consumer.entity.power.satisfaction){
+                consumer.entity.power.markChanged();
+            }
+
+            if(Mathf.isZero(previous) && consumer.entity.power.satisfaction > 0f){
+                consumer.entity.wake(TileEntity.wakePower);
+            }
         }
     }
 
     public void update(){
         if(Core.graphics.getFrameId() == lastFrameUpdated){
             return;
-        }else if(!consumers.isEmpty() && consumers.first().isEnemyCheat()){
+        }else if(!consumers.isEmpty() && consumers.tiles[0].isEnemyCheat()){
             //when cheating, just set satisfaction to 1
-            for(Tile tile : consumers){
-                tile.entity.power.satisfaction = 1f;
+            for(int i = 0; i < consumers.size; i++){
+                consumers.tiles[i].entity.power.satisfaction = 1f;
             }
 
             return;
@@ -176,7 +201,9 @@ public class PowerGraph{
 
         lastFrameUpdated = Core.graphics.getFrameId();
 
-        float powerNeeded = getPowerNeeded();
+        //requirements are only checked once per update, and reused when distributing
+        consumers.updateValid();
+        float powerNeeded = powerNeeded();
         float powerProduced = getPowerProduced();
 
         lastPowerNeeded = powerNeeded;
@@ -184,7 +211,7 @@ public class PowerGraph{
 
         powerBalance.addValue((powerProduced - powerNeeded) / Time.delta());
 
-        if(consumers.size == 0 && producers.size == 0 && batteries.size == 0){
+        if(consumers.isEmpty() && producers.isEmpty() && batteries.isEmpty()){
             return;
         }
 
@@ -196,10 +223,18 @@ public class PowerGraph{
             }
         }
 
-        distributePower(powerNeeded, powerProduced);
+        distribute(powerNeeded, powerProduced);
     }
 
     public void add(PowerGraph graph){
+        if(graph == this) return;
+
+        //always move the tiles of the smaller graph, so that each tile is only moved a logarithmic amount of times
+        if(graph.all.size > all.size){
+            graph.add(this);
+            return;
+        }
+
         for(Tile tile : graph.all){
             add(tile);
         }
@@ -247,51 +282,124 @@ public class PowerGraph{
 
     public void remove(Tile tile){
         removeSingle(tile);
-        //begin by clearing the closed set
-        CLOSED_SET.clear();
 
-        //go through all the connections of this tile
+        SEARCH_STARTS.clear();
         for(Tile other : tile.block().getPowerConnections(tile, OUT_ARRAY_1)){
-            //a graph has already been assigned to this tile from a previous call, skip it
-            if(other.entity.power.graph != this) continue;
-
-            //create graph for this branch
-            PowerGraph graph = new PowerGraph();
-            graph.add(other);
-            //add to queue for BFS
-            QUEUE.clear();
-            QUEUE.addLast(other);
-            while(QUEUE.size > 0){
-                //get child from queue
-                Tile child = QUEUE.removeFirst();
-                //remove it from this graph
-                removeSingle(child);
-                //add it to the new branch graph
-                graph.add(child);
-                //go through connections
+            if(other.entity.power.graph == this && !SEARCH_STARTS.contains(other, true)){
+                SEARCH_STARTS.add(other);
+            }
+        }
+
+        split(tile);
+    }
+
+    /** Splits this graph if two of its tiles are no longer connected after a link between them was removed. */
+    public void unlinked(Tile tile, Tile other){
+        if(tile.entity.power.graph != this || other.entity.power.graph != this) return;
+
+        SEARCH_STARTS.clear();
+        SEARCH_STARTS.add(tile);
+        SEARCH_STARTS.add(other);
+        split(null);
+    }
+
+    /**
+     * Moves every part of this graph that is no longer connected to the others into a new graph.
+     * One search is run from each tile in {@link #SEARCH_STARTS}, one step at a time each. Searches that meet are merged,
+     * and once all searches of a group have run out of tiles, that group is a separate part and is split off.
+     * The last remaining group stays in this graph without being fully traversed, so the cost depends on the size of the parts
+     * that are split off, not the size of the whole graph.
+     * @param removed tile to ignore while searching, or null.
+     */
+    private void split(Tile removed){
+        int count = SEARCH_STARTS.size;
+        if(count <= 1) return;
+
+        while(SEARCH_QUEUES.size < count){
+            SEARCH_QUEUES.add(new Queue<>());
+            SEARCH_VISITED.add(new Array<>());
+        }
+        if(searchParents.length < count){
+            searchParents = new int[count];
+        }
+
+        SEARCH_OWNERS.clear();
+        for(int i = 0; i < count; i++){
+            Tile start = SEARCH_STARTS.get(i);
+            SEARCH_QUEUES.get(i).clear();
+            SEARCH_QUEUES.get(i).addLast(start);
+            SEARCH_VISITED.get(i).clear();
+            SEARCH_VISITED.get(i).add(start);
+            SEARCH_OWNERS.put(start.pos(), i);
+            searchParents[i] = i;
+        }
+
+        int groups = count;
+
+        while(groups > 1){
+            for(int i = 0; i < count && groups > 1; i++){
+                Queue<Tile> queue = SEARCH_QUEUES.get(i);
+                if(queue.size == 0) continue;
+
+                Tile child = queue.removeFirst();
                 for(Tile next : child.block().getPowerConnections(child, OUT_ARRAY_2)){
-                    //make sure it hasn't looped back, and that the new graph being assigned hasn't already been assigned
-                    //also skip closed tiles
-                    if(next != tile && next.entity.power.graph != graph && !CLOSED_SET.contains(next.pos())){
-                        QUEUE.addLast(next);
-                        CLOSED_SET.add(next.pos());
+                    //skip the removed tile and tiles that were already split off
+                    if(next == removed || next.entity.power.graph != this) continue;
+
+                    int owner = SEARCH_OWNERS.get(next.pos(), -1);
+                    if(owner == -1){
+                        SEARCH_OWNERS.put(next.pos(), i);
+                        SEARCH_VISITED.get(i).add(next);
+                        queue.addLast(next);
+                    }else{
+                        //two searches met, so their starting tiles are still connected
+                        int a = findSearch(i), b = findSearch(owner);
+                        if(a != b){
+                            searchParents[b] = a;
+                            groups--;
+                        }
                     }
                 }
+
+                int group = findSearch(i);
+                if(queue.size == 0 && groups > 1 && searchExhausted(group, count)){
+                    splitOff(group, count);
+                    groups--;
+                }
             }
-            //update the graph once so direct consumers without any connected producer lose their power
-            graph.update();
         }
     }
 
-    private boolean otherConsumersAreValid(Tile tile, Consume consumePower){
-        for(Consume cons : tile.block().consumes.all()){
-            if(cons != consumePower && !cons.isOptional() && !cons.valid(tile.entity())){
+    private int findSearch(int search){
+        while(searchParents[search] != search){
+            search = searchParents[search] = searchParents[searchParents[search]];
+        }
+        return search;
+    }
+
+    private boolean searchExhausted(int group, int count){
+        for(int i = 0; i < count; i++){
+            if(findSearch(i) == group && SEARCH_QUEUES.get(i).size > 0){
                 return false;
             }
         }
         return true;
     }
 
+    private void splitOff(int group, int count){
+        PowerGraph graph = new PowerGraph();
+        for(int i = 0; i < count; i++){
+            if(findSearch(i) != group) continue;
+
+            for(Tile tile : SEARCH_VISITED.get(i)){
+                removeSingle(tile);
+                graph.add(tile);
+            }
+        }
+        //update the graph once so direct consumers without any connected producer lose their power
+        graph.update();
+    }
+
     @Override
     public String toString(){
         return "PowerGraph{" +
@@ -0,0 +1,115 @@
+package io.anuke.mindustry.world.blocks.power;
+
+import io.anuke.arc.collection.ObjectIntMap;
+import io.anuke.mindustry.world.*;
+import io.anuke.mindustry.world.consumers.*;
+
+import java.util.*;
+
+/**
+ * Tiles of one role in a power graph, stored as parallel arrays.
+ * The power consumer, non-optional requirements and battery capacity of each tile's block are cached when it is added,
+ * and the total capacity is kept up to date as tiles are added and removed.
+ */
+class PowerMembers{
+    private static final Consume[] noRequirements = {};
+
+    private final ObjectIntMap<Tile> indices = new ObjectIntMap<>();
+
+    Tile[] tiles = new Tile[16];
+    /** Power consumer of each tile's block, or null if it has none. */
+    ConsumePower[] power = new ConsumePower[16];
+    /** Non-optional consumers other than power of each tile's block. */
+    Consume[][] requirements = new Consume[16][];
+    /** Power capacity of each tile's block. */
+    float[] capacity = new float[16];
+    /** Whether all requirements of each tile were met in the last {@link #updateValid()} call. */
+    boolean[] valid = new boolean[16];
+    int size;
+    /** Sum of the capacity of every tile. */
+    float totalCapacity;
+
+    void add(Tile tile){
+        if(indices.containsKey(tile)) return;
+
+        if(size == tiles.length){
+            int length = size * 2;
+            tiles = Arrays.copyOf(tiles, length);
+            power = Arrays.copyOf(power, length);
+            requirements = Arrays.copyOf(requirements, length);
+            capacity = Arrays.copyOf(capacity, length);
+            valid = Arrays.copyOf(valid, length);
+        }
+
+        Consumers consumes = tile.block().consumes;
+        ConsumePower consumePower = consumes.hasPower() ? consumes.getPower() : null;
+
+        Consume[] other = new Consume[consumes.all().length];
+        int others = 0;
+        for(Consume cons : consumes.all()){
+            if(cons != consumePower && !cons.isOptional()){
+                other[others++] = cons;
+            }
+        }
+
+        int index = size++;
+        tiles[index] = tile;
+        power[index] = consumePower;
+        requirements[index] = others == 0 ? noRequirements : Arrays.copyOf(other, others);
+        capacity[index] = consumePower == null ? 0f : consumePower.capacity;
+        valid[index] = false;
+        totalCapacity += capacity[index];
+        indices.put(tile, index);
+    }
+
+    void remove(Tile tile){
+        int index = indices.remove(tile, -1);
+        if(index == -1) return;
+
+        totalCapacity -= capacity[index];
+
+        //move the last tile into the removed one's place
+        int last = --size;
+        if(index != last){
+            tiles[index] = tiles[last];
+            power[index] = power[last];
+            requirements[index] = requirements[last];
+            capacity[index] = capacity[last];
+            valid[index] = valid[last];
+            indices.put(tiles[index], index);
+        }
+
+        tiles[last] = null;
+        power[last] = null;
+        requirements[last] = null;
+
+        //avoid accumulating rounding errors once the graph runs empty
+        if(size == 0) totalCapacity = 0f;
+    }
+
+    /** Checks whether the non-power requirements of every tile are met, storing the result in {@link #valid}. */
+    void updateValid(){
+        for(int i = 0; i < size; i++){
+            valid[i] = requirementsValid(i);
+        }
+    }
+
+    boolean requirementsValid(int index){
+        Tile tile = tiles[index];
+        for(Consume cons : requirements[index]){
+            if(!cons.valid(tile.entity())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    @Override
+    public String toString(){
+        return Arrays.toString(Arrays.copyOf(tiles, size));
+    }
+}
@@ -45,12 +45,14 @@ public class PowerNode extends PowerBlock{
 
         if(!entity.power.links.contains(other.pos())){
             entity.power.links.add(other.pos());
+            entity.power.markChanged();
         }
 
         if(other.getTeamID() == tile.getTeamID()){
 
             if(!other.entity.power.links.contains(tile.pos())){
                 other.entity.power.links.add(tile.pos());
+                other.entity.power.markChanged();
             }
         }
 
@@ -65,18 +67,11 @@ public class PowerNode extends PowerBlock{
 
         entity.power.links.removeValue(other.pos());
         other.entity.power.links.removeValue(tile.pos());
+        entity.power.markChanged();
+        other.entity.power.markChanged();
 
-        PowerGraph newgraph = new PowerGraph();
-
-        //reflow from this point, covering all tiles on this side
-        newgraph.reflow(tile);
-
-        if(other.entity.power.graph != newgraph){
-            //create new graph for other end
-            PowerGraph og = new PowerGraph();
-            //reflow from other end
-            og.reflow(other);
-        }
+        //split the graph if both ends are no longer connected through anything else
+        entity.power.graph.unlinked(tile, other);
     }
 
     @Override
@@ -125,6 +125,13 @@ public class GenericCrafter extends Block{
         if(outputLiquid != null){
             tryDumpLiquid(tile, outputLiquid.liquid);
         }
+
+        //a starved crafter with nothing left to output can only continue once its inputs arrive
+        if(!entity.cons.valid() && entity.warmup < 0.01f
+        && (outputItem == null || entity.items.get(outputItem.item) == 0)
+        && (outputLiquid == null || entity.liquids.get(outputLiquid.liquid) < 0.01f)){
+            entity.sleepUntil(TileEntity.wakeItems | TileEntity.wakeLiquids | TileEntity.wakePower);
+        }
     }
 
     @Override
@@ -35,6 +35,7 @@ public class ItemSource extends Block{
         ItemSourceEntity entity = tile.entity();
         if(entity != null){
             entity.outputItem = item;
+            entity.markChanged();
         }
     }
 
@@ -109,7 +109,10 @@ public class LiquidSource extends Block{
     @Remote(targets = Loc.both, called = Loc.both, forward = true)
     public static void setLiquidSourceLiquid(Player player, Tile tile, Liquid liquid){
         LiquidSourceEntity entity = tile.entity();
-        if(entity != null) entity.source = liquid;
+        if(entity != null){
+            entity.source = liquid;
+            entity.markChanged();
+        }
     }
 
     class LiquidSourceEntity extends TileEntity{
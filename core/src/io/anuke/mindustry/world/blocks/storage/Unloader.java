@@ -51,6 +51,7 @@ public class Unloader extends Block{
         SortedUnloaderEntity entity = tile.entity();
         entity.items.clear();
         entity.sortItem = item;
+        entity.markChanged();
     }
 
     @Override
@@ -51,6 +51,7 @@ public class UnitFactory extends Block{
 
         entity.buildTime = 0f;
         entity.spawned = spawns;
+        entity.markChanged();
 
         Effects.shake(2f, 3f, entity);
         Effects.effect(Fx.producesmoke, tile.drawx(), tile.drawy());
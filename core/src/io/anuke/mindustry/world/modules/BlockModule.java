@@ -1,9 +1,19 @@
 package io.anuke.mindustry.world.modules;
 
+import io.anuke.arc.*;
+
 import java.io.*;
 
 /** A class that represents compartmentalized tile entity state. */
 public abstract class BlockModule{
+    /** Frame in which this module last changed, used to find out whether map data sent to players needs to be encoded again. */
+    public long lastChanged = -1;
+
+    /** Call after modifying this module. */
+    public void markChanged(){
+        lastChanged = Core.graphics.getFrameId();
+    }
+
     public abstract void write(DataOutput stream) throws IOException;
 
     public abstract void read(DataInput stream) throws IOException;
@@ -29,6 +29,7 @@ public class LiquidModule extends BlockModule{
         liquids[liquid.id] = amount;
         total = amount;
         current = liquid;
+        markChanged();
     }
 
     public float currentAmount(){
@@ -42,12 +43,14 @@ public class LiquidModule extends BlockModule{
     public void clear(){
         total = 0;
         Arrays.fill(liquids, 0);
+        markChanged();
     }
 
     public void add(Liquid liquid, float amount){
         liquids[liquid.id] += amount;
         total += amount;
         current = liquid;
+        markChanged();
     }
 
     public void remove(Liquid liquid, float amount){
@@ -8,7 +8,6 @@ import io.anuke.arc.*;
 import io.anuke.arc.collection.*;
 import io.anuke.arc.function.*;
 import io.anuke.arc.util.*;
-import io.anuke.arc.util.pooling.*;
 import io.anuke.mindustry.game.EventType.*;
 import io.anuke.mindustry.game.Version;
 import io.anuke.mindustry.game.*;
@@ -121,16 +120,18 @@ public class SNet implements SteamNetworkingCallback, SteamMatchmakingCallback,
             }
 
             try{
-                writeBuffer.limit(writeBuffer.capacity());
-                writeBuffer.position(0);
-                serializer.write(writeBuffer, object);
-                writeBuffer.flip();
-
-                snet.sendP2PPacket(currentServer, writeBuffer, mode == SendMode.tcp ? P2PSend.Reliable : P2PSend.UnreliableNoDelay, 0);
+                //the write buffer is shared, and remote calls may be sent from any thread
+                synchronized(writeBuffer){
+                    writeBuffer.limit(writeBuffer.capacity());
+                    writeBuffer.position(0);
+                    serializer.write(writeBuffer, object);
+                    writeBuffer.flip();
+
+                    snet.sendP2PPacket(currentServer, writeBuffer, mode == SendMode.tcp ? P2PSend.Reliable : P2PSend.UnreliableNoDelay, 0);
+                }
             }catch(Exception e){
                 net.showError(e);
             }
-            Pools.free(object);
         }else{
             provider.sendClient(object, mode);
         }
@@ -192,6 +193,16 @@ public class SNet implements SteamNetworkingCallback, SteamMatchmakingCallback,
         steamConnections.clear();
     }
 
+    @Override
+    public void broadcast(Object object, SendMode mode, NetConnection except){
+        for(SteamConnection con : connections){
+            if(con != except){
+                con.send(object, mode);
+            }
+        }
+        provider.broadcast(object, mode, except);
+    }
+
     @Override
     public Iterable<? extends NetConnection> getConnections(){
         //merge provider connections
@@ -424,14 +435,16 @@ public class SNet implements SteamNetworkingCallback, SteamMatchmakingCallback,
         }
 
         @Override
-        public void send(Object object, SendMode mode){
+        protected void sendDirect(Object object, SendMode mode){
             try{
-                writeBuffer.limit(writeBuffer.capacity());
-                writeBuffer.position(0);
-                serializer.write(writeBuffer, object);
-                writeBuffer.flip();
+                synchronized(writeBuffer){
+                    writeBuffer.limit(writeBuffer.capacity());
+                    writeBuffer.position(0);
+                    serializer.write(writeBuffer, object);
+                    writeBuffer.flip();
 
-                snet.sendP2PPacket(sid, writeBuffer, mode == SendMode.tcp ? object instanceof StreamChunk ? P2PSend.ReliableWithBuffering : P2PSend.Reliable : P2PSend.UnreliableNoDelay, 0);
+                    snet.sendP2PPacket(sid, writeBuffer, mode == SendMode.tcp ? object instanceof StreamChunk ? P2PSend.ReliableWithBuffering : P2PSend.Reliable : P2PSend.UnreliableNoDelay, 0);
+                }
             }catch(Exception e){
                 Log.err(e);
                 Log.info("Error sending packet. Disconnecting invalid client!");
@@ -450,6 +463,7 @@ public class SNet implements SteamNetworkingCallback, SteamMatchmakingCallback,
 
         @Override
         public void close(){
+            flush();
             disconnectSteamUser(sid);
         }
     }
@@ -17,7 +17,6 @@ import org.robovm.objc.block.*;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.*;
 
 import static io.anuke.mindustry.Vars.*;
 import static org.robovm.apple.foundation.NSPathUtilities.getDocumentsDirectory;
@@ -160,7 +159,7 @@ public class IOSLauncher extends IOSApplication.Delegate{
 
                 if(SaveIO.isSaveValid(file)){
                     try{
-                        SaveMeta meta = SaveIO.getMeta(new DataInputStream(new InflaterInputStream(file.read(Streams.DEFAULT_BUFFER_SIZE))));
+                        SaveMeta meta = SaveIO.getMeta(new DataInputStream(SaveIO.open(file.read(Streams.DEFAULT_BUFFER_SIZE))));
                         if(meta.tags.containsKey("name")){
                             //is map
                             if(!ui.editor.isShown()){
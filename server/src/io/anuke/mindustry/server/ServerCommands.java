@@ -161,11 +161,15 @@ class ServerCommands {
                 }
 
                 info("  &ly{0} FPS, {1} MB used.", (int)(60f / Time.delta()), Core.app.getJavaHeap() / 1024 / 1024);
+                info("  &ly{0} active, {1} sleeping tile entities.", tileGroup.size(), TileEntity.sleepingEntities);
 
                 if(playerGroup.size() > 0){
                     info("  &lyPlayers: {0}", playerGroup.size());
                     for(Player p : playerGroup.all()){
                         info("    &y{0} / {1}", p.name, p.uuid);
+                        if(p.con != null){
+                            info("      &ly{0} packets queued, {1} at most, {2} dropped.", p.con.queuedPackets.get(), p.con.maxQueuedPackets, p.con.droppedPackets);
+                        }
                     }
                 }else{
                     info("  &lyNo players connected.");
@@ -274,6 +278,21 @@ class ServerCommands {
             }
         });
 
+        handler.register("packet-budget", "[amount]", "Set the maximum amount of received packets handled per frame.", arg -> {
+            if(arg.length == 0){
+                info("Packet budget is currently &lc{0}.", netServer.admins.getPacketBudget());
+                return;
+            }
+
+            if(Strings.canParsePostiveInt(arg[0]) && Strings.parseInt(arg[0]) > 0){
+                int budget = Strings.parseInt(arg[0]);
+                netServer.admins.setPacketBudget(budget);
+                info("Packet budget is now &lc{0}.", budget);
+            }else{
+                err("Budget must be a number above 0.");
+            }
+        });
+
         handler.register("whitelist", "[on/off...]", "Enable/disable whitelisting.", arg -> {
             if(arg.length == 0){
                 info("Whitelist is currently &lc{0}.", netServer.admins.isWhitelistEnabled() ? "on" : "off");
@@ -330,6 +349,19 @@ class ServerCommands {
             info("Logging is now {0}.", value ? "on" : "off");
         });
 
+        handler.register("parallel-updates", "[on/off]", "Disables or enables updating entities on multiple threads. Keep off for deterministic update order.", arg -> {
+            if(arg.length == 0){
+                info("Parallel updates are currently &lc{0}.", logic.parallelUpdates ? "on" : "off");
+                return;
+            }
+
+            boolean value = arg[0].equalsIgnoreCase("on");
+            logic.parallelUpdates = value;
+            Core.settings.put("parallelupdates", value);
+            Core.settings.save();
+            info("Parallel updates are now &lc{0}.", value ? "on" : "off");
+        });
+
         handler.register("strict", "<on/off>", "Disables or enables strict mode", arg -> {
             boolean value = arg[0].equalsIgnoreCase("on");
             netServer.admins.setStrict(value);
@@ -561,8 +593,7 @@ class ServerCommands {
 
             Core.app.post(() -> {
                 int slot = Strings.parseInt(arg[0]);
-                SaveIO.saveToSlot(slot);
-                info("Saved to slot {0}.", slot);
+                SaveIO.saveToSlotAsync(slot, () -> info("Saved to slot {0}.", slot));
             });
         });
 
@@ -58,9 +58,12 @@ public class ServerControl implements ApplicationListener{
             "crashreport", false,
             "port", port,
             "logging", true,
-            "socket", false
+            "socket", false,
+            "parallelupdates", false
         );
 
+        logic.parallelUpdates = Core.settings.getBool("parallelupdates");
+
         /*
         This is the beginning of a lot of best practices errors. Best practices indicate there shouldn't be any
         println and that there should not be any log without an if determining if the statement should be logged.
@@ -6,14 +6,17 @@ import io.anuke.arc.math.geom.Point2;
 import io.anuke.arc.util.Log;
 import io.anuke.arc.util.Time;
 import io.anuke.mindustry.Vars;
+import io.anuke.mindustry.ai.SectorGraph;
 import io.anuke.mindustry.content.*;
 import io.anuke.mindustry.core.GameState.State;
 import io.anuke.mindustry.core.*;
+import io.anuke.mindustry.entities.effect.*;
 import io.anuke.mindustry.entities.traits.BuilderTrait.BuildRequest;
 import io.anuke.mindustry.entities.type.BaseUnit;
 import io.anuke.mindustry.entities.type.base.*;
 import io.anuke.mindustry.game.Team;
 import io.anuke.mindustry.io.SaveIO;
+import io.anuke.mindustry.io.SaveVersion.SaveState;
 import io.anuke.mindustry.maps.Map;
 import io.anuke.mindustry.net.*;
 import io.anuke.mindustry.type.ContentType;
@@ -22,6 +25,9 @@ import io.anuke.mindustry.world.*;
 import io.anuke.mindustry.world.blocks.BlockPart;
 import org.junit.jupiter.api.*;
 
+import java.io.*;
+import java.util.zip.*;
+
 import static io.anuke.mindustry.Vars.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -224,6 +230,143 @@ public class ApplicationTests{
         assertEquals(10, world.height());
     }
 
+    @Test
+    void saveChunkSeek() throws IOException{
+        world.loadMap(testMap);
+        SaveIO.saveToSlot(0);
+
+        try(RandomAccessFile file = new RandomAccessFile(SaveIO.fileFor(0).file(), "r")){
+            file.seek(SaveIO.header.length + 4);
+            //skip meta and content regions, then the map region length
+            for(int i = 0; i < 2; i++){
+                file.skipBytes(file.readInt());
+            }
+            file.readInt();
+
+            file.readUnsignedShort();
+            file.readUnsignedShort();
+            int rows = file.readUnsignedShort();
+            int chunks = file.readInt();
+
+            //read the floors of the last chunk only, seeking to its offset in the file
+            file.skipBytes((chunks - 1) * 12);
+            int offset = file.readInt();
+            byte[] floors = new byte[file.readInt()];
+            file.seek(offset);
+            file.readFully(floors);
+
+            DataInputStream stream = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(floors)));
+            Tile tile = world.rawTile(0, (chunks - 1) * rows);
+            assertEquals(tile.floorID(), stream.readShort());
+            assertEquals(tile.overlayID(), stream.readShort());
+        }
+    }
+
+    @Test
+    void saveCapturedState(){
+        world.loadMap(testMap);
+        Tile tile = world.tile(1, 1);
+        tile.setBlock(Blocks.copperWall);
+
+        SaveState state = SaveIO.capture();
+        //changes after the capture must not end up in the save
+        tile.setBlock(Blocks.air);
+        SaveIO.saveToSlot(0, state);
+
+        resetWorld();
+        SaveIO.loadFromSlot(0);
+        assertEquals(Blocks.copperWall, world.tile(1, 1).block());
+    }
+
+    @Test
+    void worldStreamCache() throws Exception{
+        world.loadMap(testMap);
+        WorldStreamCache cache = new WorldStreamCache();
+        //changes made while loading the map must be in an earlier frame than the first encode
+        long frame = Core.graphics.getFrameId();
+        while(Core.graphics.getFrameId() == frame){
+            Thread.sleep(1);
+        }
+
+        cache.write(new DataOutputStream(new ByteArrayOutputStream()));
+        assertTrue(cache.encodedRegions > 0);
+
+        //nothing changed, so every region is served from the cache
+        cache.write(new DataOutputStream(new ByteArrayOutputStream()));
+        assertEquals(0, cache.encodedRegions);
+
+        //only the region containing the core is encoded again
+        state.teams.get(defaultTeam).cores.first().entity.items.add(Items.copper, 10);
+        cache.write(new DataOutputStream(new ByteArrayOutputStream()));
+        assertEquals(1, cache.encodedRegions);
+    }
+
+    @Test
+    void surfacePuddles(){
+        createMap();
+        //surface updates use the delta of the last frame
+        Time.update();
+        Puddle.deposit(world.tile(4, 4), Liquids.water, 70f);
+        assertEquals(Liquids.water, surface.getLiquid(4, 4));
+        assertEquals(70f, surface.getAmount(4, 4));
+
+        //a full puddle spreads to its neighbours
+        surface.update();
+        assertEquals(Liquids.water, surface.getLiquid(5, 4));
+        assertTrue(surface.getAmount(4, 4) < 70f);
+
+        for(int i = 0; i < 10000 && surface.getLiquid(4, 4) != null; i++){
+            surface.update();
+        }
+        assertNull(surface.getLiquid(4, 4));
+        assertNull(surface.getLiquid(5, 4));
+        assertEquals(0f, surface.getAmount(4, 4));
+    }
+
+    @Test
+    void surfaceFires(){
+        createMap();
+        //surface updates use the delta of the last frame
+        Time.update();
+        Fire.create(world.tile(4, 4));
+        assertTrue(Fire.has(4, 4));
+        assertFalse(Fire.has(4, 5));
+
+        Fire.extinguish(world.tile(4, 4), 10000f);
+        assertFalse(Fire.has(4, 4));
+        surface.update();
+        assertTrue(surface.saveFires().isEmpty());
+
+        //fires on tiles with nothing to burn go out by themselves
+        Fire.create(world.tile(2, 2));
+        for(int i = 0; i < 10000 && Fire.has(2, 2); i++){
+            surface.update();
+        }
+        assertFalse(Fire.has(2, 2));
+        assertTrue(surface.saveFires().isEmpty());
+    }
+
+    @Test
+    void surfaceSaveEntities() throws IOException{
+        createMap();
+        Puddle.deposit(world.tile(3, 3), Liquids.oil, 20f);
+        Fire.create(world.tile(5, 5));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SaveIO.getVersion().writeEntities(new DataOutputStream(bytes));
+
+        surface.reset();
+        assertNull(surface.getLiquid(3, 3));
+        assertFalse(Fire.has(5, 5));
+
+        SaveIO.getVersion().readEntities(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(Liquids.oil, surface.getLiquid(3, 3));
+        assertEquals(20f, surface.getAmount(3, 3));
+        assertTrue(Fire.has(5, 5));
+        assertEquals(1, surface.savePuddles().size);
+        assertEquals(1, surface.saveFires().size);
+    }
+
     @Test
     void arrayIterators(){
         Array<String> arr = Array.with("a", "b" , "c", "d", "e", "f");
@@ -376,6 +519,97 @@ public class ApplicationTests{
         assertEquals(core, state.teams.get(Team.sharded).cores.first());
     }
 
+    @Test
+    void sectorPathThroughGap(){
+        //a wall along a sector border, with a gap at the top
+        wallMap(64, 64, 16, 63);
+        SectorGraph graph = new SectorGraph();
+        IntArray path = new IntArray();
+
+        assertTrue(graph.findPath(2, 2, 30, 2, path));
+        assertEquals(Pos.get(2, 2), path.first());
+        assertEquals(Pos.get(30, 2), path.peek());
+
+        IntArray tiles = refineAll(graph, path);
+        assertEquals(Pos.get(30, 2), tiles.peek());
+        assertTrue(tiles.contains(Pos.get(16, 63)));
+    }
+
+    @Test
+    void sectorPathSameSector(){
+        wallMap(64, 64, 16, 63);
+        SectorGraph graph = new SectorGraph();
+        IntArray path = new IntArray();
+
+        assertTrue(graph.findPath(2, 2, 10, 12, path));
+        assertEquals(2, path.size);
+
+        IntArray tiles = refineAll(graph, path);
+        //no walls in the way, so the refined path is as short as possible
+        assertEquals(8 + 10, tiles.size);
+    }
+
+    @Test
+    void sectorPathInvalidated(){
+        wallMap(64, 64, 16, 63);
+        SectorGraph graph = new SectorGraph();
+        IntArray path = new IntArray();
+        assertTrue(graph.findPath(2, 2, 30, 2, path));
+
+        Tile opened = world.tile(16, 2);
+        opened.setBlock(Blocks.air);
+        graph.invalidate(opened);
+
+        assertTrue(graph.findPath(2, 2, 30, 2, path));
+        IntArray tiles = refineAll(graph, path);
+        assertTrue(tiles.contains(Pos.get(16, 2)));
+        assertFalse(tiles.contains(Pos.get(16, 63)));
+    }
+
+    @Test
+    void sectorPathBlocked(){
+        //no gap at all
+        wallMap(64, 64, 16, 64);
+        SectorGraph graph = new SectorGraph();
+        IntArray path = new IntArray();
+
+        assertFalse(graph.findPath(2, 2, 30, 2, path));
+        assertFalse(graph.findPath(16, 2, 30, 2, path), "Paths can't start on a solid tile.");
+        assertEquals(0, path.size);
+    }
+
+    /** Creates an empty map with a wall along the column at this x, from the bottom up to the gap. */
+    void wallMap(int width, int height, int wallX, int gapY){
+        Tile[][] tiles = world.createTiles(width, height);
+
+        world.beginMapLoad();
+        for(int x = 0; x < tiles.length; x++){
+            for(int y = 0; y < tiles[0].length; y++){
+                tiles[x][y] = new Tile(x, y, Blocks.air.id, (byte)0, x == wallX && y < gapY ? Blocks.copperWall.id : Blocks.air.id);
+            }
+        }
+        world.endMapLoad();
+    }
+
+    /** Refines every step of a path, making sure each tile is passable and adjacent to the one before it. */
+    IntArray refineAll(SectorGraph graph, IntArray path){
+        IntArray result = new IntArray(), steps = new IntArray();
+        int last = path.first();
+
+        for(int i = 0; i < path.size - 1; i++){
+            assertTrue(graph.refine(path.get(i), path.get(i + 1), steps), "Step " + i + " could not be refined.");
+            for(int j = 0; j < steps.size; j++){
+                int pos = steps.get(j);
+                assertEquals(1, Math.abs(Pos.x(pos) - Pos.x(last)) + Math.abs(Pos.y(pos) - Pos.y(last)));
+                assertFalse(world.tile(pos).solid());
+                result.add(pos);
+                last = pos;
+            }
+        }
+
+        return result;
+    }
+
     void depositTest(Block block, Item item){
         BaseUnit unit = UnitTypes.spirit.create(Team.derelict);
         Tile tile = new Tile(0, 0, Blocks.air.id, (byte)0, block.id);
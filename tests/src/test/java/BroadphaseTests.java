@@ -0,0 +1,125 @@
+import io.anuke.arc.collection.Array;
+import io.anuke.arc.collection.ObjectSet;
+import io.anuke.arc.math.Mathf;
+import io.anuke.arc.math.RandomXS128;
+import io.anuke.arc.math.geom.Rectangle;
+import io.anuke.arc.util.Log;
+import io.anuke.arc.util.Time;
+import io.anuke.mindustry.entities.*;
+import io.anuke.mindustry.entities.traits.SolidTrait;
+import io.anuke.mindustry.entities.type.SolidEntity;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BroadphaseTests{
+    static final float size = 4000f;
+    /** Seeded separately from Mathf.random, so that failures can be reproduced. */
+    static final RandomXS128 random = new RandomXS128();
+
+    @BeforeEach
+    void seed(){
+        random.setSeed(1);
+    }
+
+    @Test
+    void spatialHashMatchesQuadTree(){
+        Array<TestEntity> entities = createEntities(2000);
+        QuadTreeBroadphase tree = new QuadTreeBroadphase();
+        SpatialHash hash = new SpatialHash(32f);
+        tree.resize(0, 0, size, size);
+        hash.resize(0, 0, size, size);
+
+        for(int frame = 0; frame < 10; frame++){
+            for(TestEntity entity : entities){
+                entity.x += range(20f);
+                entity.y += range(20f);
+            }
+
+            //remove a few entities every frame, like bullets hitting something
+            for(int i = 0; i < 20; i++){
+                hash.remove(entities.remove(random.nextInt(entities.size)));
+            }
+
+            tree.update(entities);
+            hash.update(entities);
+
+            for(int i = 0; i < 50; i++){
+                float x = random(0f, size), y = random(0f, size), w = random(10f, 200f), h = random(10f, 200f);
+                ObjectSet<SolidTrait> expected = new ObjectSet<>(), result = new ObjectSet<>();
+
+                tree.intersect(x, y, w, h, expected::add);
+                hash.intersect(x, y, w, h, result::add);
+
+                assertEquals(expected, result, "Broadphases disagree on query " + i + " in frame " + frame);
+            }
+        }
+    }
+
+    /** Compares the spatial hash to the quadtree. Not part of the default test run; run it with the benchmark task. */
+    @Test
+    @Tag("benchmark")
+    void benchmarkBroadphases(){
+        Array<TestEntity> entities = createEntities(2500);
+
+        for(Broadphase broadphase : new Broadphase[]{new QuadTreeBroadphase(), new SpatialHash(32f)}){
+            broadphase.resize(0, 0, size, size);
+            int[] found = {0};
+
+            long start = Time.nanos();
+            for(int frame = 0; frame < 100; frame++){
+                for(TestEntity entity : entities){
+                    entity.x = Mathf.clamp(entity.x + range(2f), 0, size);
+                    entity.y = Mathf.clamp(entity.y + range(2f), 0, size);
+                }
+
+                broadphase.update(entities);
+
+                for(TestEntity entity : entities){
+                    broadphase.intersect(entity.x - 8f, entity.y - 8f, 16f, 16f, e -> found[0]++);
+                }
+            }
+
+            Log.info("{0}: {1}ms for 100 frames, {2} hits", broadphase.getClass().getSimpleName(), Time.timeSinceNanos(start) / 1000000f, found[0]);
+        }
+    }
+
+    static Array<TestEntity> createEntities(int amount){
+        Array<TestEntity> entities = new Array<>();
+        for(int i = 0; i < amount; i++){
+            TestEntity entity = new TestEntity();
+            entity.x = random(0f, size);
+            entity.y = random(0f, size);
+            entity.size = random(2f, 24f);
+            entities.add(entity);
+        }
+        return entities;
+    }
+
+    static float random(float min, float max){
+        return min + random.nextFloat() * (max - min);
+    }
+
+    static float range(float amount){
+        return random(-amount, amount);
+    }
+
+    static class TestEntity extends SolidEntity{
+        float size;
+
+        @Override
+        public void hitbox(Rectangle rectangle){
+            rectangle.setSize(size).setCenter(x, y);
+        }
+
+        @Override
+        public void hitboxTile(Rectangle rectangle){
+            hitbox(rectangle);
+        }
+
+        @Override
+        public EntityGroup targetGroup(){
+            return null;
+        }
+    }
+}
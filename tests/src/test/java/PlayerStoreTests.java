@@ -0,0 +1,151 @@
+import io.anuke.arc.collection.*;
+import io.anuke.arc.files.*;
+import io.anuke.mindustry.net.Administration.*;
+import io.anuke.mindustry.net.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlayerStoreTests{
+    FileHandle file;
+
+    @BeforeEach
+    void createFile() throws IOException{
+        file = new FileHandle(Files.createTempDirectory("players").resolve("players.dat").toFile());
+    }
+
+    @AfterEach
+    void deleteFile(){
+        file.parent().deleteDirectory();
+    }
+
+    @Test
+    void replay(){
+        PlayerStore store = load();
+        PlayerInfo info = info("a", "1.1.1.1");
+        store.add(info);
+        store.add(info("b", "2.2.2.2"));
+        store.setBanned("3.3.3.3", true);
+        store.setBanned("4.4.4.4", true);
+        store.flush();
+
+        info.banned = true;
+        info.lastName = "renamed";
+        info.ips.add("5.5.5.5");
+        store.changed(info);
+        store.setBanned("4.4.4.4", false);
+        store.flush();
+
+        PlayerStore loaded = load();
+        PlayerInfo read = loaded.get("a");
+        assertNotNull(read);
+        assertNotNull(loaded.get("b"));
+        assertTrue(read.banned);
+        assertEquals("renamed", read.lastName);
+        assertEquals(read, loaded.firstWithIP("5.5.5.5"));
+        assertTrue(loaded.withNameCandidates("RENAMED").contains(read, true));
+        assertTrue(loaded.isBanned("3.3.3.3"));
+        assertFalse(loaded.isBanned("4.4.4.4"));
+    }
+
+    @Test
+    void indexedBeforeFlush(){
+        PlayerStore store = load();
+        PlayerInfo info = info("a", "1.1.1.1");
+        store.add(info);
+        assertEquals(info, store.firstWithIP("1.1.1.1"));
+
+        info.ips.add("2.2.2.2");
+        store.changed(info);
+        assertEquals(info, store.firstWithIP("2.2.2.2"));
+    }
+
+    @Test
+    void legacyImport(){
+        ObjectMap<String, PlayerInfo> legacy = new ObjectMap<>();
+        legacy.put("a", info("a", "1.1.1.1"));
+        legacy.put("b", info("b", "2.2.2.2"));
+
+        PlayerStore store = new PlayerStore(file);
+        store.load(legacy, Array.with("3.3.3.3"));
+        assertTrue(store.isStored());
+        assertEquals(legacy.get("a"), store.firstWithIP("1.1.1.1"));
+
+        PlayerStore loaded = load();
+        assertNotNull(loaded.get("a"));
+        assertNotNull(loaded.get("b"));
+        assertTrue(loaded.isBanned("3.3.3.3"));
+    }
+
+    @Test
+    void truncatedRecord() throws IOException{
+        PlayerStore store = load();
+        store.add(info("a", "1.1.1.1"));
+        store.flush();
+        long length = file.length();
+        store.add(info("b", "2.2.2.2"));
+        store.flush();
+
+        try(RandomAccessFile access = new RandomAccessFile(file.file(), "rw")){
+            access.setLength(file.length() - 3);
+        }
+
+        PlayerStore loaded = load();
+        assertNotNull(loaded.get("a"));
+        assertNull(loaded.get("b"));
+        assertTrue(file.sibling(file.name() + ".bak").exists());
+        //only the readable record is kept
+        assertEquals(length, file.length());
+        assertNotNull(load().get("a"));
+    }
+
+    @Test
+    void unknownRecord() throws IOException{
+        PlayerStore store = load();
+        store.add(info("a", "1.1.1.1"));
+        store.flush();
+        long length = file.length();
+
+        try(OutputStream stream = file.write(true)){
+            stream.write(new byte[]{99, 1, 2, 3});
+        }
+
+        PlayerStore loaded = load();
+        assertNotNull(loaded.get("a"));
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    void unknownVersion() throws IOException{
+        try(DataOutputStream stream = new DataOutputStream(file.write(false))){
+            stream.writeInt(-5);
+            stream.writeLong(1234);
+        }
+
+        PlayerStore store = load();
+        assertFalse(store.all().iterator().hasNext());
+        assertTrue(file.sibling(file.name() + ".bak").exists());
+
+        store.add(info("a", "1.1.1.1"));
+        store.flush();
+        assertNotNull(load().get("a"));
+    }
+
+    PlayerStore load(){
+        PlayerStore store = new PlayerStore(file);
+        store.load(new ObjectMap<>(), new Array<>());
+        return store;
+    }
+
+    static PlayerInfo info(String id, String ip){
+        PlayerInfo info = new PlayerInfo();
+        info.id = id;
+        info.lastIP = ip;
+        info.ips.add(ip);
+        info.names.add(id);
+        return info;
+    }
+}
@@ -0,0 +1,160 @@
+package power;
+
+import io.anuke.arc.util.*;
+import io.anuke.mindustry.*;
+import io.anuke.mindustry.core.*;
+import io.anuke.mindustry.world.*;
+import io.anuke.mindustry.world.blocks.power.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Tests merging and splitting of power graphs when tiles are placed and removed. */
+public class PowerGraphSplitTests extends PowerTestFixture{
+    static final int length = 20000, spacing = 100, nodes = 1000;
+
+    @Test
+    void removingTilesSplitsGraph(){
+        Tile[] tiles = placeLine(length);
+        PowerGraph graph = tiles[0].entity.power.graph;
+        for(Tile tile : tiles){
+            assertSame(graph, tile.entity.power.graph);
+        }
+
+        for(int i = spacing; i < length; i += spacing){
+            removeTile(tiles[i]);
+        }
+
+        for(int i = 0; i < length; i++){
+            if(i % spacing == 0) continue;
+
+            //tiles of a segment share a graph, tiles of neighbouring segments don't
+            if(i % spacing == 1 && i > spacing){
+                assertNotSame(tiles[i - 2].entity.power.graph, tiles[i].entity.power.graph, "Tile " + i + " was not split from the previous segment");
+            }else if(i > 0){
+                assertSame(tiles[i - 1].entity.power.graph, tiles[i].entity.power.graph, "Tile " + i + " was split from its segment");
+            }
+        }
+    }
+
+    @Test
+    void removingTileFromLoopKeepsGraph(){
+        Tile[] tiles = placeLine(1000);
+        connect(tiles[0], tiles[tiles.length - 1]);
+
+        removeTile(tiles[500]);
+
+        PowerGraph graph = tiles[0].entity.power.graph;
+        for(int i = 0; i < tiles.length; i++){
+            if(i != 500){
+                assertSame(graph, tiles[i].entity.power.graph, "Tile " + i + " was split from a loop");
+            }
+        }
+    }
+
+    @Test
+    void unlinkingNodesSplitsGraph(){
+        World previous = Vars.world;
+        try{
+            Tile[] tiles = placeNodes(nodes);
+            int middle = nodes / 2;
+            PowerNode.unlinkPowerNodes(null, tiles[middle - 1], tiles[middle]);
+
+            assertFalse(tiles[middle - 1].entity.power.links.contains(tiles[middle].pos()));
+            assertFalse(tiles[middle].entity.power.links.contains(tiles[middle - 1].pos()));
+
+            PowerGraph first = tiles[0].entity.power.graph, second = tiles[nodes - 1].entity.power.graph;
+            assertNotSame(first, second);
+            for(int i = 0; i < nodes; i++){
+                assertSame(i < middle ? first : second, tiles[i].entity.power.graph, "Node " + i + " is in the wrong graph");
+            }
+        }finally{
+            Vars.world = previous;
+        }
+    }
+
+    @Test
+    void unlinkingNodesInLoopKeepsGraph(){
+        World previous = Vars.world;
+        try{
+            Tile[] tiles = placeNodes(nodes);
+            link(tiles[0], tiles[nodes - 1]);
+            PowerNode.unlinkPowerNodes(null, tiles[nodes / 2 - 1], tiles[nodes / 2]);
+
+            PowerGraph graph = tiles[0].entity.power.graph;
+            for(int i = 0; i < nodes; i++){
+                assertSame(graph, tiles[i].entity.power.graph, "Node " + i + " was split from a loop");
+            }
+        }finally{
+            Vars.world = previous;
+        }
+    }
+
+    /** Times placing and deconstructing a long line. Not part of the default test run; run it with the benchmark task. */
+    @Test
+    @Tag("benchmark")
+    void benchmarkPlacingAndRemovingTiles(){
+        long start = Time.nanos();
+        Tile[] tiles = placeLine(length);
+        Log.info("Placed a line of {0} tiles in {1}ms", length, Time.timeSinceNanos(start) / 1000000f);
+
+        start = Time.nanos();
+        for(int i = spacing; i < length; i += spacing){
+            removeTile(tiles[i]);
+        }
+        Log.info("Removed {0} tiles from a line of {1} in {2}ms", length / spacing - 1, length, Time.timeSinceNanos(start) / 1000000f);
+    }
+
+    static Tile[] placeLine(int length){
+        Block block = createFakeProducerBlock(1f);
+        Tile[] tiles = new Tile[length];
+        for(int i = 0; i < length; i++){
+            tiles[i] = createFakeTile(i, 0, block);
+            if(i > 0){
+                connect(tiles[i - 1], tiles[i]);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Places a line of tiles that aren't next to each other, each linked to the previous one by a laser.
+     * Replaces the world, as laser links are looked up through it.
+     */
+    static Tile[] placeNodes(int amount){
+        Vars.world = new World();
+        Tile[][] grid = Vars.world.createTiles(amount * 2, 1);
+
+        Block block = createFakeProducerBlock(1f);
+        Tile[] tiles = new Tile[amount];
+        for(int i = 0; i < amount; i++){
+            tiles[i] = grid[i * 2][0] = createFakeTile(i * 2, 0, block);
+            if(i > 0){
+                link(tiles[i - 1], tiles[i]);
+            }
+        }
+        return tiles;
+    }
+
+    /** Links two tiles the same way {@link PowerNode#linkPowerNodes} does. */
+    static void link(Tile tile, Tile other){
+        tile.entity.power.links.add(other.pos());
+        other.entity.power.links.add(tile.pos());
+        tile.entity.power.graph.add(other.entity.power.graph);
+    }
+
+    /** Connects two tiles the same way placing them next to each other does. */
+    static void connect(Tile tile, Tile other){
+        tile.entity.proximity().add(other);
+        other.entity.proximity().add(tile);
+        other.entity.power.graph.add(tile.entity.power.graph);
+    }
+
+    /** Removes a tile the same way deconstructing it does. */
+    static void removeTile(Tile tile){
+        tile.entity.power.graph.remove(tile);
+        for(Tile other : tile.entity.proximity()){
+            other.entity.proximity().removeValue(tile, true);
+        }
+    }
+}